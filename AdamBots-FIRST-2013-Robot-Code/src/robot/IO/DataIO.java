@@ -26,7 +26,10 @@ import javax.microedition.io.Connector;
  * Store data in the log file using the following format:
  * CALIBRATION_NAME_X=2200 % This is a comment
  * 
- * Use DataIO.getCalibration(int lineNumber) to get data from the index.
+ * Use DataIO.getCalibration(int lineNumber) to get data from the index, or
+ * DataIO.getCalibration(String name, double defaultValue) to get it by name.
+ * Change values with .setCalibration() and rewrite the file with
+ * .saveCalibrations().
  * 
  * TL;DR 
  * LOGGING: Store with .store(), write file with .writeLogFile().
@@ -161,6 +164,16 @@ public class DataIO {
         return contents;
     }
     
+    /**
+     * Returns the lines in the specified text file.
+     * 
+     * @param filename The name of the file on the cRIO.
+     * @return An array of the lines, empty if the file could not be read.
+     */
+    public static String[] getFileLines(String filename){
+        return splitLines(getFileContents(filename));
+    }
+    
     /**
      * Splits the given string by line into an array of strings.
      * @param full The full string to be split.
@@ -199,7 +212,8 @@ public class DataIO {
     // Writing Files -----------------------------------------------------------
     
     /**
-     * Writes the given content to a file with the given file name.
+     * Writes the given content to a file with the given file name, replacing
+     * the file if it already exists.
      * @param filename Name of file to be saved.
      * @param contents Contents so be stored in text file.
      */
@@ -210,15 +224,20 @@ public class DataIO {
              * BufferedWriter wouldn't work, so a DataOutputStream is used 
              * instead. A new stream is created from a FileConnection created
              * from the given filename. The stream writes the given string, 
-             * flushes and closes.
+             * flushes and closes. writeUTF() is not used because it prefixes
+             * the text with its length. create() fails on an existing file,
+             * so the old file is deleted first.
              */
             DataOutputStream file;
             FileConnection fc;
             fc = (FileConnection) Connector.open("file:///" + filename +".txt", 
-                    Connector.WRITE);
+                    Connector.READ_WRITE);
+            if (fc.exists()){
+                fc.delete();
+            }
             fc.create();
             file = fc.openDataOutputStream();
-            file.writeUTF(contents);
+            file.write(contents.getBytes());
             file.flush();
             file.close();
             fc.close();
@@ -270,22 +289,18 @@ public class DataIO {
             calib = new double[fullCalib.length];
         
             for (int i = 0; i < fullCalib.length; i++){
-                calib[i] = parseCalib(fullCalib[i]);
+                //Blank lines and comments have no value
+                try{
+                    calib[i] = parseCalib(fullCalib[i]);
+                }catch(Exception e){
+                    calib[i] = Double.NaN;
+                }
             }
         
         }catch(Exception e){}
         
     }
     
-//    /**
-//     * Updates the array of calibration data with new values
-//     * @param lineNumber The location of information in the calibration array.
-//     * @param value The new value.
-//     */
-//    public static void changeCalibValue(int lineNumber, int value){
-//        calib[lineNumber] = value; 
-//    }
-    
     /**
      * Gets the calibration value at a given index
      * @param lineNumber The line to get the value from
@@ -295,35 +310,85 @@ public class DataIO {
         return calib[lineNumber];
     }
     
-//    /**
-//     * Rewrites the calibration file with updated information
-//     */
-//    public static void overwriteCalibrations(){
-//        String full = "";
-//        boolean write = false;
-//        if (calib.length == fullCalib.length){
-//        for (int i = 0; i < fullCalib.length; i++){
-//            if (calib[i] != parseCalib(fullCalib[i])){
-//                String c = fullCalib[i];
-//                write = true;
-//                String prefix;
-//                String suffix = "";
-//                prefix = c.substring(0, c.indexOf('=')+1);
-//                if (c.indexOf('%') != -1){
-//                   suffix = c.substring('%');
-//                }
-//                fullCalib[i] = prefix + calib[i] + suffix;
-//            }
-//            
-//            full = fullCalib[i] + StoredData.NL;
-//            
-//        }
-//        
-//        if (write){
-//            writeToFile(CALIBRATION_FILE, full);
-//        }
-//        }
-//    }
+    /**
+     * Gets the calibration value with a given name.
+     * @param name The name before the '=' on the calibration line.
+     * @param defaultValue The value to use if the name is not in the file.
+     * @return The calibration value
+     */
+    public static double getCalibration(String name, double defaultValue){
+        int i = findCalib(name);
+        if (i == -1 || Double.isNaN(calib[i])){
+            return defaultValue;
+        }
+        return calib[i];
+    }
+    
+    /**
+     * Changes the calibration value with a given name, adding a line for it
+     * if the name is not in the file. Use saveCalibrations() to keep it.
+     * @param name The name before the '='.
+     * @param value The new value.
+     */
+    public static void setCalibration(String name, double value){
+        if (fullCalib == null){
+            fullCalib = new String[0];
+            calib = new double[0];
+        }
+        int i = findCalib(name);
+        if (i == -1){
+            String[] tempFull = new String[fullCalib.length + 1];
+            double[] temp = new double[calib.length + 1];
+            System.arraycopy(fullCalib, 0, tempFull, 0, fullCalib.length);
+            System.arraycopy(calib, 0, temp, 0, calib.length);
+            fullCalib = tempFull;
+            calib = temp;
+            i = fullCalib.length - 1;
+            fullCalib[i] = name + "=";
+        }
+        
+        //Keep the comment, if any
+        String c = fullCalib[i];
+        String suffix = "";
+        if (c.indexOf('%') != -1){
+            suffix = " " + c.substring(c.indexOf('%'));
+        }
+        fullCalib[i] = name + "=" + value + suffix;
+        calib[i] = value;
+    }
+    
+    /**
+     * Rewrites the calibration file with the current values.
+     */
+    public static void saveCalibrations(){
+        if (fullCalib == null){
+            return;
+        }
+        String full = "";
+        for (int i = 0; i < fullCalib.length; i++){
+            full += fullCalib[i] + "\n";
+        }
+        writeToFile(CALIBRATION_FILE, full);
+    }
+    
+    /**
+     * Finds the line of the calibration with a given name.
+     * @param name The name before the '='.
+     * @return The line number, or -1 if it is not in the file.
+     */
+    private static int findCalib(String name){
+        if (fullCalib == null){
+            return -1;
+        }
+        for (int i = 0; i < fullCalib.length; i++){
+            int equals = fullCalib[i].indexOf('=');
+            if (equals != -1 && fullCalib[i].substring(0, equals).trim()
+                    .equals(name)){
+                return i;
+            }
+        }
+        return -1;
+    }
 
     /**
      * Parses a line of calibration to get a value
@@ -341,7 +406,8 @@ public class DataIO {
             String value = "";
             
             for (int j = 0; j < c.length(); j++){
-                if(Character.isDigit(c.charAt(j)) || c.charAt(j)=='.'){
+                if(Character.isDigit(c.charAt(j)) || c.charAt(j)=='.' || 
+                        c.charAt(j)=='-' || c.charAt(j)=='E'){
                     value+=c.charAt(j);
                 }
             }
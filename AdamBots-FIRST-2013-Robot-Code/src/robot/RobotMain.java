@@ -17,10 +17,18 @@ import robot.actuators.RobotActuators;
 import robot.behavior.RobotClimb;
 import robot.behavior.RobotDrive;
 import robot.behavior.RobotShoot;
+import robot.behavior.ShooterReadiness;
+import robot.behavior.ShotDetector;
+import robot.camera.CameraModel;
+import robot.camera.CameraStats;
+import robot.camera.VisionRegression;
 import robot.camera.RobotCamera;
+import robot.camera.TargetTracker;
 import robot.control.FancyJoystick;
+import robot.logic.FlywheelTuner;
 import robot.logic.LogicPhase;
 import robot.logic.LogicTask;
+import robot.logic.targeting.ShotTable;
 import robot.logic.targeting.TargetShooterAngleLogic;
 import robot.logic.targeting.TargetShooterSpeedLogic;
 import robot.logic.targeting.TargetSpinLogic;
@@ -71,6 +79,9 @@ public final class RobotMain extends IterativeRobot {
     private AutonLogic _autonLogic;
     private TeleopLogic _teleopLogic;
     private ClimbLogic _climbLogic;
+	
+	/** Time of the previous update(), used to measure the loop period. */
+	private long _lastUpdateMillis = 0;
     
     //// JOYSTICKS -------------------------------------------------------------
     
@@ -102,8 +113,10 @@ public final class RobotMain extends IterativeRobot {
 		// Initialize Static Behavior Classes
 		RobotDrive.init();
 		RobotShoot.init();
+		ShotDetector.init();
 
 		//Initialize Static Logic Classes
+		ShotTable.load();
 		TargetShooterAngleLogic.init();
 		TargetShooterSpeedLogic.init();
 		TargetSpinLogic.init();
@@ -142,6 +155,9 @@ public final class RobotMain extends IterativeRobot {
 		RobotCamera.init();
 		RobotActuators.cameraLED.set(true);
 		
+		// The robot starts with a full magazine
+		ShotDetector.setDiscsLoaded(ShotDetector.MAGAZINE_CAPACITY);
+		
 		// Initialize AutonLogic
 		System.out.println("\tautonInit() :: creating new instance of AutonLogic()");
 		_autonLogic = new AutonLogic();
@@ -201,6 +217,16 @@ public final class RobotMain extends IterativeRobot {
     
     public void update() {
 		
+		// Measure Loop Period (lets the camera back off when we overrun)
+		long now = System.currentTimeMillis();
+		if (_lastUpdateMillis != 0) {
+			RobotCamera.reportLoopPeriod(now - _lastUpdateMillis);
+		}
+		_lastUpdateMillis = now;
+		
+		// Sample Sensor Histories
+		RobotSensors.update();
+		
 		// Update the current LogicPhase
 		if(_currentLogicPhase != null){
 			_currentLogicPhase.updatePhase();
@@ -214,16 +240,22 @@ public final class RobotMain extends IterativeRobot {
 		}
 		
 		// Update Subsystems
+		RobotDrive.update();	// Follows guided drive profiles
 		TargetShooterSpeedLogic.update();
 		TargetShooterAngleLogic.update();
 		TargetSpinLogic.update();
 		RobotShoot.update();
-		//TODO: Add robotcamera back in RobotCamera.update();
+		ShotDetector.update();
+		ShooterReadiness.update();
+		RobotCamera.update();	// Keeps CameraThread alive; it idles until frames are requested
 		RobotClimb.update();
 		FancyMotor.update();	// Checks Limit Switches for each FancyMotor
 		
 		// Print to Dashboardp
 		SmartDashboard.putNumber("Target Place", RobotCamera.getTargetLocationUnits());
+		SmartDashboard.putNumber("Target Confidence", TargetTracker.getConfidence());
+		SmartDashboard.putNumber("Targets Visible", RobotCamera.getTargetCount());
+		CameraStats.putDashboard();
 		
 		// Smartdashboard get variables
 		RobotShoot.SHOOTER_KP = SmartDashboard.getNumber("shooterPidKP", 0.0001);
@@ -249,11 +281,12 @@ public final class RobotMain extends IterativeRobot {
 		SmartDashboard.putNumber("stringPot.getVoltage", RobotSensors.stringPot.getVoltage());
 		SmartDashboard.putBoolean("Shooter In Position", RobotShoot.isShooterInPosition());
 		
-		if (RobotShoot.isShooterInPosition())
+		// Blink the arm LEDs while a shot would be good
+		if (ShooterReadiness.isReady())
 		{
 			long u = System.currentTimeMillis();
 			//RobotActuators.ledGreenEffect.set((u % 300) < 150);
-			//RobotActuators.ledArmEffect.set((u % 300) < 150);
+			RobotActuators.ledArmEffect.set((u % 300) < 150);
 			//RobotActuators.ledGroundEffect.set((u % 300) < 150);
 		}
 		else
@@ -271,13 +304,19 @@ public final class RobotMain extends IterativeRobot {
      */
     public void testInit() {
 		System.out.println("RobotMain :: testInit()");
+		RobotCamera.init();
+		if (SmartDashboard.getBoolean("Run Vision Regression", false)) {
+			VisionRegression.run();
+		}
 	}
 
     /**
      * This function is called periodically during test mode
      */
     public void testPeriodic() {
-    
+		RobotCamera.update();
+		CameraModel.calibratePeriodic();
+		FlywheelTuner.run();
 	}
 
     //// DISABLED --------------------------------------------------------------
@@ -295,6 +334,12 @@ public final class RobotMain extends IterativeRobot {
 		RobotActuators.ledArmEffect.set(false);
 		
 		//DataIO.writeLogFile();
+		CameraStats.writeReport();
+		FlywheelTuner.abort();
+		RobotShoot.saveFeedBoost();
+		
+		// Pick up any edits to the shot table made between matches
+		ShotTable.load();
     }
 
     /**
@@ -302,6 +347,8 @@ public final class RobotMain extends IterativeRobot {
      */
     public void disabledPeriodic() {
         RobotDrive.shiftNeutral();
+		// Keep the shooter angle filter following the pot while disabled
+		RobotSensors.stringPot.update();
 		SmartDashboard.putBoolean("configA", RobotSensors.configA.get());
 		SmartDashboard.putBoolean("configB", RobotSensors.configB.get());
 		SmartDashboard.putBoolean("configC", RobotSensors.configC.get());
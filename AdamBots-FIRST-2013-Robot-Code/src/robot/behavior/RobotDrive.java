@@ -4,12 +4,28 @@
  */
 package robot.behavior;
 
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import robot.actuators.RobotActuators;
 import robot.sensors.RobotSensors;
 import utils.MathUtils;
+import utils.TrapezoidProfile;
 
 /**
  * Responsible for controlling the robot's drive motors.
+ *
+ * Guided driving (driveDistanceInches(), turnDegrees()) follows a motion
+ * profile planned when the move begins: trapezoidal, or S-curve if
+ * DRIVE_S_CURVE is set.  Each side is driven by a feedforward from the
+ * profile's velocity and acceleration plus a correction on its encoder
+ * position error, and the move ends once the profile is finished and the
+ * encoders are within ENCODER_TOLERANCE.  update() must be called
+ * periodically.
+ *
+ * Heading hold keeps straight driving straight with the chassis gyro: the
+ * heading when straight driving begins is held by steering the sides apart
+ * by up to HEADING_MAX_CORRECTION.  Guided straight moves use it when gyro
+ * assist is on, and teleop uses it through driveHeadingHold() while the
+ * driver is not turning and "Heading Hold" is set on the SmartDashboard.
  * @author Ben, Tyler
  */
 public abstract class RobotDrive extends RobotBehavior {
@@ -32,6 +48,40 @@ public abstract class RobotDrive extends RobotBehavior {
 	/** Gyro Tolerance (in degrees) for Gyro-Assisted Turning. */
 	public static double GYRO_TOLERANCE_DEGREES = 3.0;
 	
+	// Guided Drive Constants
+	/** Sign of the encoder distances when the robot drives forward (as in TDriveDistance). */
+	public static double ENCODER_DIRECTION = -1.0;
+	/** Wheel speed at full output, in inches per second. */
+	public static double DRIVE_MAX_SPEED_IPS = 120;
+	/** Greatest planned acceleration, in inches per second squared. */
+	public static double DRIVE_MAX_ACCELERATION = 120;
+	/** Period of the loop calling update(); converts the per-loop acceleration rate. */
+	public static double DRIVE_LOOP_SECONDS = 0.02;
+	/** Output per inch per second of planned velocity. */
+	public static double DRIVE_KV = 1.0 / 120;
+	/** Output per inch per second squared of planned acceleration. */
+	public static double DRIVE_KA = 0.002;
+	/** Output per inch of position error. */
+	public static double DRIVE_KP = 0.05;
+	/** Use smooth (S-curve) rather than trapezoidal acceleration. */
+	public static boolean DRIVE_S_CURVE = true;
+	/** A guided move is abandoned this long after its profile finishes. */
+	public static double DRIVE_SETTLE_TIMEOUT_SECONDS = 1.0;
+	
+	// Heading Constants (heading hold and TargetSpinLogic's aiming)
+	/** Output difference per degree of heading error. */
+	public static double HEADING_KP = 0.02;
+	/** Output difference per degree per second of turning, to damp the approach. */
+	public static double HEADING_KD = 0.002;
+	/** Largest output difference heading hold may add. */
+	public static double HEADING_MAX_CORRECTION = 0.3;
+	/** In teleop, sides commanded within this of each other count as straight. */
+	public static double HEADING_HOLD_STRAIGHT_TOLERANCE = 0.05;
+	/** In teleop, heading hold is not used below this speed. */
+	public static double HEADING_HOLD_MIN_SPEED = 0.1;
+	/** Default for "Heading Hold" on the SmartDashboard. */
+	public static boolean HEADING_HOLD_TELEOP = true;
+	
 	//// PRIVATE VARIABLES -----------------------------------------------------
 	
 	// Autonomous / Guided Drive Control
@@ -46,20 +96,31 @@ public abstract class RobotDrive extends RobotBehavior {
 	private static double _leftEncoderTargetInches = 0.0;
 	/** A right encoder target value, in inches, for guided driving. */
 	private static double _rightEncoderTargetInches = 0.0;
-	/** The desired acceleration, expressed as a PWM value.  Range 0.0-1.0. */
+	/** The desired acceleration, expressed as a PWM change per loop.  Range 0.0-1.0. */
 	private static double _driveAcceleration = 0.0;
-	/** Guided driving will begin at (or below) this speed. */
-	private static double _driveSpeedInitial = 0.2;
-	/** Accumulated guided driving speed for the left motor. */
-	private static double _driveLeftVelocity = 0.0;
-	/** Accumulated guided driving speed for the right motor. */
-	private static double _driveRightVelocity = 0.0;
-	/** A maximum speed for guided driving.  Note:  Actual speed accumulates 
-	 * gradually based on the desired acceleration.*/
+	/** A maximum speed for guided driving, expressed as a PWM value. */
 	private static double _driveSpeedTarget = 1.0;
+	/**
+	 * The profile of the longer side's travel, in inches; each side follows
+	 * it scaled by its own target.
+	 */
+	private static final TrapezoidProfile _profile = new TrapezoidProfile(DRIVE_MAX_SPEED_IPS, DRIVE_MAX_ACCELERATION);
+	/** Distance planned by the profile, in inches (positive). */
+	private static double _profileDistance = 0.0;
+	private static long _profileStartMillis = 0;
+	/** Whether the last guided move ended within ENCODER_TOLERANCE. */
+	private static boolean _reachedTarget = false;
+	
+	// Heading Hold
+	
+	/** Whether direct driving is currently holding a heading. */
+	private static boolean _headingHold = false;
+	/** The heading, in degrees, being held. */
+	private static double _headingReferenceDegrees = 0.0;
 
 	//// INITIALIZATION --------------------------------------------------------
 	public static void init() {
+		SmartDashboard.putBoolean("Heading Hold", HEADING_HOLD_TELEOP);
 	}
 
 	//// UPDATE ----------------------------------------------------------------
@@ -67,47 +128,59 @@ public abstract class RobotDrive extends RobotBehavior {
 	public static void update() {
 		// Guided Driving Logic
 		if ( _guidedDriving ) {
+			double t = (System.currentTimeMillis() - _profileStartMillis) / 1000.0;
+
 			// Check Encoders
-			double leftDistance = RobotSensors.encoderDriveLeft.getDistance();
-			double rightDistance = RobotSensors.encoderDriveRight.getDistance();
+			double leftDistance = ENCODER_DIRECTION * RobotSensors.encoderDriveLeft.getDistance();
+			double rightDistance = ENCODER_DIRECTION * RobotSensors.encoderDriveRight.getDistance();
 			double leftDifference = _leftEncoderTargetInches - leftDistance; // Positive if wheels need to move in positive dir
 			double rightDifference = _rightEncoderTargetInches - rightDistance; // Positive if wheels need to move in positive dir
 
-			// Accelerate
-			double driveLeftDir = MathUtils.sign(leftDifference);
-			double driveRightDir = MathUtils.sign(rightDifference);
-			double driveLeftVelTarget = driveLeftDir * _driveSpeedTarget;
-			double driveRightVelTarget = driveRightDir * _driveSpeedTarget;
-
-			if ( Math.abs(_driveLeftVelocity - driveLeftVelTarget) > _driveAcceleration ) {
-				_driveLeftVelocity += driveLeftDir * _driveAcceleration;
-			}
-			else {
-				_driveLeftVelocity = driveLeftVelTarget;
-			}
-
-			if ( Math.abs(_driveRightVelocity - driveRightVelTarget) > _driveAcceleration ) {
-				_driveRightVelocity += driveRightDir * _driveAcceleration;
-			}
-			else {
-				_driveRightVelocity = driveRightVelTarget;
+			// Follow the Profile
+			double leftOutput = profileOutput(_leftEncoderTargetInches, leftDistance, t);
+			double rightOutput = profileOutput(_rightEncoderTargetInches, rightDistance, t);
+			if ( _gyroAssist && _leftEncoderTargetInches == _rightEncoderTargetInches ) {
+				setMotorsCorrected(leftOutput, rightOutput, headingCorrection());
+			} else {
+				setMotors(leftOutput, rightOutput);
 			}
 
-			// Motors
-			setMotors(_driveLeftVelocity, _driveRightVelocity);
-
 			// Have we Reached the Target Values?
-			if ( Math.abs((leftDifference + rightDifference) / 2.0) < ENCODER_TOLERANCE ) {
-				endGuidedDriving();
+			if ( _profile.isFinished(t) ) {
+				boolean inTolerance = (Math.abs(leftDifference) + Math.abs(rightDifference)) / 2.0 < ENCODER_TOLERANCE;
+				if ( inTolerance || t > _profile.getTotalTime() + DRIVE_SETTLE_TIMEOUT_SECONDS ) {
+					if ( !inTolerance ) {
+						println("RobotDrive :: guided drive timed out " + leftDifference + "/" + rightDifference + " in from target");
+					}
+					_reachedTarget = inTolerance;
+					endGuidedDriving();
+				}
 			}
 		}
 	}
 
+	/**
+	 * Computes one side's output while following the profile.
+	 * @param target The side's target distance, in inches.
+	 * @param distance The side's current distance, in inches.
+	 * @param t Seconds since the move began.
+	 */
+	private static double profileOutput( double target, double distance, double t ) {
+		double scale = _profileDistance > 0 ? target / _profileDistance : 0;
+		double position = scale * _profile.position(t);
+		double velocity = scale * _profile.velocity(t);
+		double acceleration = scale * _profile.acceleration(t);
+		double output = DRIVE_KV * velocity + DRIVE_KA * acceleration + DRIVE_KP * (position - distance);
+		return Math.max(-1, Math.min(1, output));
+	}
+
 	//// DRIVE TYPE ------------------------------------------------------------
 	
 	/**
-	 * Prepares the robot for guided driving.  During guided driving, RobotDrive
-	 * should be continuously updated until it reaches its target.
+	 * Prepares the robot for guided driving and plans the move's profile.
+	 * During guided driving, RobotDrive should be continuously updated until
+	 * it reaches its target.  The speed and acceleration rate, as PWM values,
+	 * become the profile's cruising velocity and acceleration.
 	 */
 	private static void beginGuidedDriving() {
 
@@ -117,11 +190,22 @@ public abstract class RobotDrive extends RobotBehavior {
 		RobotSensors.encoderDriveLeft.start();
 		RobotSensors.encoderDriveRight.start();
 
-		// Set Velocities if Not Already Guided Driving
-		if ( !_guidedDriving ) {
-			_driveLeftVelocity = MathUtils.sign(_leftEncoderTargetInches) * Math.min(_driveSpeedInitial, _driveSpeedTarget);
-			_driveRightVelocity = MathUtils.sign(_rightEncoderTargetInches) * Math.min(_driveSpeedInitial, _driveSpeedTarget);
+		// Plan the Profile (the encoders restart from zero, so every move starts at rest)
+		double maxVelocity = Math.min(1.0, _driveSpeedTarget) * DRIVE_MAX_SPEED_IPS;
+		double maxAcceleration = DRIVE_MAX_ACCELERATION;
+		if ( _driveAcceleration > 0 ) {
+			maxAcceleration = Math.min(maxAcceleration, _driveAcceleration * DRIVE_MAX_SPEED_IPS / DRIVE_LOOP_SECONDS);
 		}
+		_profileDistance = Math.max(Math.abs(_leftEncoderTargetInches), Math.abs(_rightEncoderTargetInches));
+		_profile.setLimits(maxVelocity, maxAcceleration);
+		_profile.setSCurve(DRIVE_S_CURVE);
+		_profile.plan(0, 0, _profileDistance);
+		_profileStartMillis = System.currentTimeMillis();
+
+		// Hold the Heading at the Start of the Move
+		_headingReferenceDegrees = RobotSensors.gyroChassis.getAngle();
+		_headingHold = false;
+		_reachedTarget = false;
 
 		_guidedDriving = true;
 	}
@@ -136,9 +220,8 @@ public abstract class RobotDrive extends RobotBehavior {
 			RobotSensors.encoderDriveLeft.stop();
 			RobotSensors.encoderDriveRight.stop();
 
-			_driveLeftVelocity = 0.0;
-			_driveRightVelocity = 0.0;
 			_driveSpeedTarget = 0.0;
+			_profileDistance = 0.0;
 			_leftEncoderTargetInches = 0.0;
 			_rightEncoderTargetInches = 0.0;
 
@@ -157,6 +240,21 @@ public abstract class RobotDrive extends RobotBehavior {
 
 	//// AUTONOMOUS / GUIDED DRIVE METHODS -------------------------------------
 	
+	/**
+	 * Tells whether a guided move is in progress.
+	 */
+	public static boolean isGuidedDriving() {
+		return _guidedDriving;
+	}
+	
+	/**
+	 * Tells whether the last guided move ended within ENCODER_TOLERANCE of
+	 * its target, rather than timing out or being interrupted.
+	 */
+	public static boolean didReachTarget() {
+		return _reachedTarget;
+	}
+	
 	/**
 	 * Begins a guided driving period, during which RobotDrive drives the robot
 	 * for the specified distance, then stops.
@@ -196,10 +294,24 @@ public abstract class RobotDrive extends RobotBehavior {
 	 * @param accRate Acceleration rate (positive).
 	 */
 	public static void driveDistanceInches( double inches, double speed, double accRate ) {
+		driveDistanceInches(inches, speed, accRate, true);
+	}
+
+	/**
+	 * Begins a guided driving period, during which RobotDrive drives the robot
+	 * for the specified distance, then stops.
+	 * @param inches The number of inches to move forward.
+	 * @param speed The speed at which to move (positive).
+	 * @param accRate Acceleration rate (positive).
+	 * @param gyroAssist Whether or not the Gyro should hold the heading while
+	 * driving.
+	 */
+	public static void driveDistanceInches( double inches, double speed, double accRate, boolean gyroAssist ) {
 		_leftEncoderTargetInches = inches;
 		_rightEncoderTargetInches = inches;
 		_driveSpeedTarget = Math.abs(speed);
 		_driveAcceleration = Math.abs(accRate);
+		_gyroAssist = gyroAssist;
 		beginGuidedDriving();
 	}
 
@@ -261,6 +373,7 @@ public abstract class RobotDrive extends RobotBehavior {
 		_leftEncoderTargetInches = degrees / RobotSensors.DPI_ENCODER_DRIVE_LEFT_DEGREES;
 		_driveSpeedTarget = Math.abs(speed);
 		_driveAcceleration = Math.abs(accRate);
+		_gyroAssist = gyroAssist;
 		RobotSensors.gyroChassis.reset();
 		beginGuidedDriving();
 	}
@@ -292,9 +405,72 @@ public abstract class RobotDrive extends RobotBehavior {
 	 */
 	public static void drive( double leftSpeed, double rightSpeed ) {
 		beginDirectDriving();
+		_headingHold = false;
 		setMotors(leftSpeed, rightSpeed);
 	}
 
+	/**
+	 * Sets the speed of each set of drive motors, holding the heading while
+	 * both sides are commanded alike.  The heading is captured when straight
+	 * driving begins and released as soon as the sides differ, so the
+	 * driver's turns are never fought.
+	 * @param leftSpeed to set the left speed (+ Forwards, - Backwards)
+	 * @param rightSpeed to set the right speed (+ Forwards, - Backwards)
+	 */
+	public static void driveHeadingHold( double leftSpeed, double rightSpeed ) {
+		boolean straight = Math.abs(leftSpeed - rightSpeed) <= HEADING_HOLD_STRAIGHT_TOLERANCE
+				&& Math.abs(leftSpeed + rightSpeed) / 2 >= HEADING_HOLD_MIN_SPEED;
+		if ( !straight ) {
+			drive(leftSpeed, rightSpeed);
+			return;
+		}
+		beginDirectDriving();
+		if ( !_headingHold ) {
+			_headingHold = true;
+			_headingReferenceDegrees = RobotSensors.gyroChassis.getAngle();
+		}
+		double speed = (leftSpeed + rightSpeed) / 2;
+		setMotorsCorrected(speed, speed, headingCorrection());
+	}
+
+	//// HEADING HOLD ----------------------------------------------------------
+	
+	/**
+	 * PD control on a heading error with the chassis gyro, shared by heading
+	 * hold and aiming so both use one set of gains.
+	 * @param errorDegrees Target heading minus current heading.
+	 * @return Output to add to the left side and subtract from the right
+	 * (+ CW), as for turn(); not limited.
+	 */
+	public static double headingOutput( double errorDegrees ) {
+		return HEADING_KP * errorDegrees - HEADING_KD * RobotSensors.gyroChassis.getRateDegreesPerSecond();
+	}
+
+	/**
+	 * PD control toward the held heading.
+	 * @return Output to add to the left side and subtract from the right (+ CW).
+	 */
+	private static double headingCorrection() {
+		double correction = headingOutput(_headingReferenceDegrees - RobotSensors.gyroChassis.getAngle());
+		return Math.max(-HEADING_MAX_CORRECTION, Math.min(HEADING_MAX_CORRECTION, correction));
+	}
+
+	/**
+	 * Steers the sides apart by a correction, scaling both down together if
+	 * either would exceed full output, so the correction still takes effect
+	 * at full speed.
+	 */
+	private static void setMotorsCorrected( double leftSpeed, double rightSpeed, double correction ) {
+		double left = leftSpeed + correction;
+		double right = rightSpeed - correction;
+		double largest = Math.max(Math.abs(left), Math.abs(right));
+		if ( largest > 1 ) {
+			left /= largest;
+			right /= largest;
+		}
+		setMotors(left, right);
+	}
+
 	//// SET MOTORS ------------------------------------------------------------
 	
 	/**
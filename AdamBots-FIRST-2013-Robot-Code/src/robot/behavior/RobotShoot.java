@@ -5,11 +5,15 @@
 package robot.behavior;
 
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import robot.IO.DataIO;
 import robot.RobotMain;
 import robot.actuators.RobotActuators;
 import robot.camera.RobotCamera;
+import robot.camera.TargetTracker;
 import robot.control.MagicBox;
-import robot.logic.FancyPIDController;
+import robot.logic.AngleController;
+import robot.logic.FlywheelController;
+import robot.logic.targeting.ShotTable;
 import robot.sensors.RobotSensors;
 
 /**
@@ -23,63 +27,142 @@ public abstract class RobotShoot extends RobotBehavior {
 	public static double SHOOTER_KI = 0.0001;									//// WAS 0.001 as well as 0.0015 changed for different shooter
 	public static double SHOOTER_KP = 0.001;									//// WAS 0.002 as well as 0.002 changed for different shooter
 	public static double SHOOTER_KD = 0.0005;									//// WAS 0.000
-	public static double SHOOTER_PID_TOLERANCE = 0.15;
+	/** At-speed tolerance as a percentage of the setpoint (about 15 RPM, as the old 0.15% of the input range was). */
+	public static double SHOOTER_PID_TOLERANCE = 0.5;
 	public static double SHOOTER_MAX_INPUT = 10000;
 	public static double SHOOTER_MIN_INPUT = 0;
 	public static double SHOOTER_MAX_OUTPUT = 1.0;
 	public static double SHOOTER_MIN_OUTPUT = 0.15;
-	public static double SHOOTER_ADJUST_SLOW_MULTIPLIER = .50;
-	public static double SHOOTER_ADJUST_FAST_MULTIPLIER = .80;
+	/** Feedforward output per RPM; overridden by SHOOTER_KV in the calibration file. */
+	public static double SHOOTER_KV = 1.0 / 5500;
+	/** Feedforward output to overcome friction; overridden by SHOOTER_KS. */
+	public static double SHOOTER_KS = 0.05;
+	/** The PID may move the output this far from the feedforward. */
+	public static double SHOOTER_TRIM_RANGE = 0.3;
+	/** Output change per RPM of error per sample in take-back-half mode. */
+	public static double SHOOTER_TBH_GAIN = 0.00001;
+	/** Whether feeds are preceded by a learned boost; shown as "shooterFeedBoost". */
+	public static boolean SHOOTER_FEED_BOOST = true;
 	/**
 	 * The degrees of tolerance permitted in setting the target angle.
 	 */
 	public static final double SHOOTER_ANGLE_TOLERANCE = 0.25;
+	/** Lowest angle the shooter is ever driven to. */
+	public static final double SHOOTER_MIN_ANGLE = 19;
+	/** Shooter angle profile cruising speed in degrees/second. */
+	public static double SHOOTER_ANGLE_MAX_VELOCITY = 20;
+	/** Shooter angle profile acceleration in degrees/second^2. */
+	public static double SHOOTER_ANGLE_MAX_ACCELERATION = 60;
+	/** Output per degree of error from the angle profile. */
+	public static double SHOOTER_ANGLE_KP = 0.15;
+	/** Output per degree/second of angle velocity error. */
+	public static double SHOOTER_ANGLE_KD = 0.01;
+	/** Output per degree/second of planned velocity; overridden by SHOOTER_ANGLE_KV. */
+	public static double SHOOTER_ANGLE_KV = 0.04;
+	/** Output holding the shooter level against gravity; overridden by SHOOTER_ANGLE_KG. */
+	public static double SHOOTER_ANGLE_KG = 0.0;
+	public static double SHOOTER_ANGLE_MAX_OUTPUT = 0.8;
 	/**
 	 * The angle that the shooter is currently moving towards.
 	 */
 	private static double _targetAngleDegrees;
 	/**
-	 * The PID interface used to control the shooter.
+	 * The feedforward and PID controller used to control the shooter.
 	 */
-	private static FancyPIDController _shooterPID;
+	private static FlywheelController _shooterPID;
+	/**
+	 * The profiled position controller used to set the shooter angle.
+	 */
+	private static AngleController _angleController;
 	/**
 	 * Turns on and off the ability to set target angle.
 	 */
 	private static boolean _moveToTarget = false;
+	/**
+	 * Whether the target angle is following the camera.
+	 */
+	private static boolean _autoAngle = false;
+	/**
+	 * Whether the feeder is extended, or waiting for the feed boost to extend.
+	 */
+	private static boolean _feederExtended = false;
+	private static boolean _feedPending = false;
 
 	/**
 	 * init() creates the static private _shooterPid() for controlling the shooter wheel.
 	 */
 	public static void init() {
-		_shooterPID = new FancyPIDController(SHOOTER_KP, SHOOTER_KI, SHOOTER_KD,
+		_shooterPID = new FlywheelController(SHOOTER_KP, SHOOTER_KI, SHOOTER_KD, SHOOTER_KV, SHOOTER_KS,
 				RobotSensors.counterShooterSpeed, RobotActuators.shooterWheelMotor);
+		_shooterPID.loadFeedforward("SHOOTER_KV", "SHOOTER_KS");
+		setShooterGains(DataIO.getCalibration("SHOOTER_KP", SHOOTER_KP),
+				DataIO.getCalibration("SHOOTER_KI", SHOOTER_KI),
+				DataIO.getCalibration("SHOOTER_KD", SHOOTER_KD));
 		_shooterPID.setInputRange(SHOOTER_MIN_INPUT, SHOOTER_MAX_INPUT);
+		_shooterPID.setTrimRange(SHOOTER_TRIM_RANGE);
 		_shooterPID.setOutputRange(SHOOTER_MIN_OUTPUT, SHOOTER_MAX_OUTPUT);
+		_shooterPID.setTakeBackHalfGain(SHOOTER_TBH_GAIN);
 		_shooterPID.setPercentTolerance(SHOOTER_PID_TOLERANCE);
+		_shooterPID.setBoostOutput(DataIO.getCalibration("SHOOTER_BOOST", 0));
 		_shooterPID.enable();
+		SmartDashboard.putBoolean("shooterFeedBoost", SHOOTER_FEED_BOOST);
+
+		// The angle motor raises the shooter with negative output
+		_angleController = new AngleController(SHOOTER_ANGLE_KP, SHOOTER_ANGLE_KD, SHOOTER_ANGLE_KV,
+				SHOOTER_ANGLE_MAX_VELOCITY, SHOOTER_ANGLE_MAX_ACCELERATION, SHOOTER_ANGLE_TOLERANCE,
+				RobotActuators.shooterAngleMotor, true);
+		_angleController.loadFeedforward("SHOOTER_ANGLE_KV", "SHOOTER_ANGLE_KG");
+		_angleController.setMaxOutput(SHOOTER_ANGLE_MAX_OUTPUT);
 	}
 
 	/**
-	 * Calculates and returns the shooter angle from the string potentiometer.
+	 * Calculates and returns the shooter angle from the filtered string potentiometer.
 	 * @return angle of elevation (above horizontal).
 	 */
 	public static double getShooterAngleDegrees() {
-		double x = (RobotSensors.stringPot.getAverageVoltage() - 4.88) / -0.8156; // Length of string in inches
+		return angleFromVoltage(RobotSensors.stringPot.getFilteredVoltage());
+	}
+
+	/**
+	 * Estimates how fast the shooter angle is changing.
+	 * @return Degrees per second, positive upward.
+	 */
+	public static double getShooterAngleVelocity() {
+		return angleSlope(RobotSensors.stringPot.getFilteredVoltage()) * RobotSensors.stringPot.getVoltageRate();
+	}
+
+	/**
+	 * Converts the string potentiometer noise into degrees at the current angle.
+	 * @return RMS angle noise in degrees.
+	 */
+	public static double getShooterAngleNoiseDegrees() {
+		return Math.abs(angleSlope(RobotSensors.stringPot.getFilteredVoltage())) * RobotSensors.stringPot.getNoiseVoltage();
+	}
+
+	/**
+	 * Degrees per volt of the string potentiometer at a voltage.
+	 */
+	private static double angleSlope( double voltage ) {
+		double h = 0.01;
+		return (angleFromVoltage(voltage + h) - angleFromVoltage(voltage - h)) / (2 * h);
+	}
+
+	/**
+	 * Converts a string potentiometer voltage to the shooter angle.
+	 */
+	private static double angleFromVoltage( double voltage ) {
+		double x = (voltage - 4.88) / -0.8156; // Length of string in inches
 		double y = 12.0 + 3 / 8.0; // Length of triangle side #1
 		double z = 12.0 + 1 / 2.0; // Length of triangle side #2
 		return com.sun.squawk.util.MathUtils.acos(Math.min(1, Math.max(0, (x * x - y * y - z * z) / (-2.0 * y * z)))) * 180.0 / Math.PI + 19;//TODO: Use potentiometer calculations
 	}
 
 	/**
-	 * Calculates the ideal angle, in degrees as calculated from the RobotCamera's distance value.
+	 * Looks up the ideal angle, in degrees, for the filtered target location in the ShotTable.
 	 * @return Degree automatically calculated angle for best shooting.
 	 */
 	public static double getIdealShooterAngle() {
-		double x = RobotCamera.getTargetLocationUnits();
-		double a = 0.0;//Constants determined from quadratic best fit.
-		double b = -0.0834654;
-		double c = 34.7007;
-		return a * x * x + b * x + c;
+		return ShotTable.getAngle(TargetTracker.getPredictedLocationUnits());
 	}
 
 	/**
@@ -91,10 +174,47 @@ public abstract class RobotShoot extends RobotBehavior {
 	}
 
 	/**
-	 * Tells whether the shooter's angle is close to the target angle.
+	 * Returns the angle the shooter is moving towards.
+	 * @return The target angle of elevation.
+	 */
+	public static double getTargetAngleDegrees() {
+		return _targetAngleDegrees;
+	}
+
+	/**
+	 * Returns the angle the controller is actually driving toward: the target
+	 * angle, raised to SHOOTER_MIN_ANGLE.
+	 * @return The controlled angle of elevation.
+	 */
+	public static double getControlledAngleDegrees() {
+		return _angleController.getTarget();
+	}
+
+	/**
+	 * Tells whether the shooter angle is being driven toward the target angle.
+	 */
+	public static boolean isAngleControlled() {
+		return _angleController.isEnabled();
+	}
+
+	/**
+	 * Tells whether the target angle is following the camera.
+	 */
+	public static boolean isAutoAngle() {
+		return _autoAngle;
+	}
+
+	/**
+	 * Tells whether the shooter's angle is close to the target angle.  While
+	 * the angle is controlled this is the controller's own verdict, so it
+	 * agrees with the angle it aims for (at least SHOOTER_MIN_ANGLE) and the
+	 * band it holds within.
 	 */
 	public static boolean isShooterInPosition() {
-		return Math.abs(getShooterAngleDegrees() - _targetAngleDegrees) < SHOOTER_ANGLE_TOLERANCE;
+		if ( _angleController.isEnabled() ) {
+			return _angleController.isInPosition();
+		}
+		return Math.abs(getShooterAngleDegrees() - Math.max(SHOOTER_MIN_ANGLE, _targetAngleDegrees)) < SHOOTER_ANGLE_TOLERANCE;
 	}
 
 	/**
@@ -113,6 +233,80 @@ public abstract class RobotShoot extends RobotBehavior {
 		_shooterPID.setRPM(speed_rpm);
 	}
 
+	/**
+	 * Returns the speed the shooter wheel is being driven toward.
+	 * @return The target speed in rpm.
+	 */
+	public static double getTargetSpeedRPM() {
+		return _shooterPID.getSetpoint();
+	}
+
+	/**
+	 * Extends or retracts the feeder which pushes a disc into the shooter
+	 * wheel.  All feeder actuation goes through here so ShotDetector can
+	 * confirm each shot.
+	 *
+	 * While "shooterFeedBoost" is on and the wheel is at speed, a feed is
+	 * coordinated with the wheel: the wheel controller boosts its output and
+	 * update() extends the feeder FlywheelController.BOOST_LEAD_MILLIS later,
+	 * so the wheel droops less.  Callers timing a feed should start from
+	 * isFeederExtended().
+	 * @param extended TRUE to push a disc into the wheel.
+	 */
+	public static void setFeeder( boolean extended ) {
+		if ( !extended ) {
+			_feedPending = false;
+			_shooterPID.cancelBoost();
+			driveFeeder(false);
+		} else if ( !_feederExtended && !_feedPending ) {
+			if ( SmartDashboard.getBoolean("shooterFeedBoost", SHOOTER_FEED_BOOST) && _shooterPID.startBoost() ) {
+				_feedPending = true;
+			} else {
+				driveFeeder(true);
+			}
+		}
+	}
+
+	/**
+	 * Extends a pending feed once the boost has led it long enough, or has
+	 * been dropped.
+	 */
+	private static void updateFeeder() {
+		if ( _feedPending && (_shooterPID.isBoostReady() || !_shooterPID.isBoosting()) ) {
+			_feedPending = false;
+			driveFeeder(true);
+		}
+	}
+
+	private static void driveFeeder( boolean extended ) {
+		RobotActuators.shooterFeederSolenoid.set(extended);
+		_feederExtended = extended;
+		if ( extended ) {
+			_shooterPID.feedStarted();
+		}
+		ShotDetector.feederChanged(extended);
+	}
+
+	/**
+	 * Tells whether the feeder is actually extended, rather than waiting for
+	 * the feed boost.
+	 */
+	public static boolean isFeederExtended() {
+		return _feederExtended;
+	}
+
+	/**
+	 * Saves the learned feed boost to the calibration file, so it is kept
+	 * when the robot restarts.
+	 */
+	public static void saveFeedBoost() {
+		double boost = _shooterPID.getBoostOutput();
+		if ( boost != DataIO.getCalibration("SHOOTER_BOOST", 0) ) {
+			DataIO.setCalibration("SHOOTER_BOOST", boost);
+			DataIO.saveCalibrations();
+		}
+	}
+
 	/**
 	 * Disables pid.
 	 */
@@ -138,6 +332,45 @@ public abstract class RobotShoot extends RobotBehavior {
 		_shooterPID.setPID(SHOOTER_KP, SHOOTER_KI, SHOOTER_KD);
 	}
 
+	/**
+	 * Sets and applies the shooter PID gains, and shows them on the
+	 * SmartDashboard fields that RobotMain reads them back from.
+	 */
+	public static void setShooterGains( double kp, double ki, double kd ) {
+		SHOOTER_KP = kp;
+		SHOOTER_KI = ki;
+		SHOOTER_KD = kd;
+		SmartDashboard.putNumber("shooterPidKP", kp);
+		SmartDashboard.putNumber("shooterPidKI", ki);
+		SmartDashboard.putNumber("shooterPidKD", kd);
+		updatePIDConstants();
+	}
+
+	/**
+	 * Sets the shooter feedforward.
+	 * @param kV Output per RPM.
+	 * @param kS Output to overcome friction.
+	 */
+	public static void setShooterFeedforward( double kV, double kS ) {
+		_shooterPID.setFeedforward(kV, kS);
+	}
+
+	/**
+	 * Returns the shooter wheel controller, for test mode tools which need
+	 * its metrics.
+	 */
+	public static FlywheelController getShooterController() {
+		return _shooterPID;
+	}
+
+	/**
+	 * Selects the shooter wheel control mode.
+	 * @param mode FlywheelController.FEEDFORWARD_PID, BANG_BANG or TAKE_BACK_HALF.
+	 */
+	public static void setShooterMode( int mode ) {
+		_shooterPID.setMode(mode);
+	}
+
 	/**
 	 * Enables control over the target angle.
 	 */
@@ -154,32 +387,46 @@ public abstract class RobotShoot extends RobotBehavior {
 
 	/**
 	 * Adjusts shooter angle if .startMovingToTarget() has been called or Magic Box Siwtch #7 is on.
+	 * The angle follows a trapezoidal profile to the target; see AngleController.
 	 */
 	public static void update() {
+		setShooterMode((int) SmartDashboard.getNumber("shooterControlMode", FlywheelController.FEEDFORWARD_PID));
+		updateFeeder();
 		if (!RobotMain.getInstance().isAutonomous())
 		{
 			SmartDashboard.putString("Shooter Angle Offset", (getShooterAngleDegrees() - _targetAngleDegrees)+"/"+SHOOTER_ANGLE_TOLERANCE );
 			SmartDashboard.putBoolean("Shooter In Position",isShooterInPosition());
 		}
 		SmartDashboard.putBoolean("DO TARGET", false);
+		_autoAngle = false;
 		if ( _moveToTarget || (!RobotMain.getInstance().isAutonomous() && MagicBox.getDigitalIn(7)) ) {
 			SmartDashboard.putBoolean("DO TARGET", true);
 			if ( RobotMain.getInstance().isOperatorControl() && MagicBox.getDigitalIn(7) ) {
-				_targetAngleDegrees = getIdealShooterAngle() + MagicBox.getAngleOffset();
-			}
-			double target = Math.max(19, _targetAngleDegrees);
-			if ( isShooterInPosition() ) {
-				RobotActuators.shooterAngleMotor.set(0);
-			} else {
-				if (Math.abs(_targetAngleDegrees - getShooterAngleDegrees()) < SHOOTER_ANGLE_TOLERANCE * 5) {
-					RobotActuators.shooterAngleMotor.set(-utils.MathUtils.sign(target - getShooterAngleDegrees()) * SHOOTER_ADJUST_SLOW_MULTIPLIER);
-				}
-				else {
-					RobotActuators.shooterAngleMotor.set(-utils.MathUtils.sign(target - getShooterAngleDegrees()) * SHOOTER_ADJUST_FAST_MULTIPLIER);
+				RobotCamera.requestFrames();
+				_autoAngle = true;
+				// Hold the last angle rather than chasing an unsteady target
+				if ( TargetTracker.isReady() ) {
+					_targetAngleDegrees = getIdealShooterAngle() + MagicBox.getAngleOffset();
 				}
 			}
+			_angleController.enable();
+			_angleController.setTarget(Math.max(SHOOTER_MIN_ANGLE, _targetAngleDegrees));
+		} else {
+			_angleController.disable();
 		}
-		
+		// limitShooterB stops the angle motor at the bottom of its travel
+		_angleController.update(getShooterAngleDegrees(), getShooterAngleVelocity(), RobotSensors.limitShooterB.get());
+
 		SmartDashboard.putNumber("shooterDegreesToTarget", _targetAngleDegrees - getShooterAngleDegrees());
+		SmartDashboard.putNumber("shooterAngleReference", _angleController.getReferenceAngle());
+		SmartDashboard.putNumber("shooterAngleVelocity", getShooterAngleVelocity());
+		SmartDashboard.putNumber("shooterAngleNoise", getShooterAngleNoiseDegrees());
+		SmartDashboard.putNumber("stringPotPeakNoise", RobotSensors.stringPot.getPeakNoiseVoltage());
+		SmartDashboard.putNumber("shooterTimeInTolerance", _shooterPID.getTimeInToleranceMillis());
+		SmartDashboard.putNumber("shooterSpinUpMillis", _shooterPID.getSpinUpMillis());
+		SmartDashboard.putNumber("shooterSteadyStateError", _shooterPID.getSteadyStateError());
+		SmartDashboard.putNumber("shooterRecoveryMillis", _shooterPID.getRecoveryMillis());
+		SmartDashboard.putNumber("shooterFeedBoostOutput", _shooterPID.getBoostOutput());
+		SmartDashboard.putNumber("shooterFeedDroop", _shooterPID.getLastFeedDroop());
 	}
 }
@@ -0,0 +1,153 @@
+package robot.behavior;
+
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import robot.camera.TargetTracker;
+import robot.logic.targeting.TargetShooterSpeedLogic;
+import robot.logic.targeting.TargetSpinLogic;
+import robot.sensors.RobotSensors;
+
+/**
+ * Decides once per loop whether a disc fed now would be a good shot, so every
+ * user (autonomous tasks, the feed interlock, the driver LEDs) gets the same
+ * answer.  The shooter is ready when the wheel is at speed, the angle is in
+ * position (while it is being controlled), the robot faces the target (while
+ * aiming) and the vision estimate is confident (while anything follows it).
+ *
+ * Each condition has hysteresis: it becomes true inside its entry band and
+ * false only outside its wider exit band (for the wheel speed, those of
+ * FlywheelController.isAtSpeed()), so readiness does not flicker at
+ * the edge of tolerance.  When not ready, getReason() tells what is missing.
+ * update() must be called once per loop, after RobotShoot.update().
+ * @author Adambots 245
+ */
+public abstract class ShooterReadiness extends RobotBehavior {
+	//// PRINT FILTERING -------------------------------------------------------
+
+	/** Hide RobotObject field to allow for proper print filtering. */
+	public static boolean verboseOutput = true;
+
+	//// CONSTANTS -------------------------------------------------------------
+
+	/** Angle error bands, as multiples of RobotShoot.SHOOTER_ANGLE_TOLERANCE. */
+	public static double ANGLE_ENTRY_TOLERANCES = 1;
+	public static double ANGLE_EXIT_TOLERANCES = 2;
+	/** Heading error bands, as multiples of TargetSpinLogic.TARGET_TOLERANCE_DEGREES. */
+	public static double HEADING_ENTRY_TOLERANCES = 1;
+	public static double HEADING_EXIT_TOLERANCES = 2;
+	/** Vision confidence bands. */
+	public static double VISION_ENTRY_CONFIDENCE = TargetTracker.READY_CONFIDENCE;
+	public static double VISION_EXIT_CONFIDENCE = 0.4;
+
+	// Reasons
+	public static final int READY = 0;
+	public static final int WHEEL_STOPPED = 1;
+	public static final int SPEED = 2;
+	public static final int ANGLE = 3;
+	public static final int HEADING = 4;
+	public static final int VISION = 5;
+	private static final String[] REASON_NAMES = { "ready", "wheel stopped", "speed", "angle", "heading", "vision" };
+
+	//// PRIVATE VARIABLES -----------------------------------------------------
+
+	private static boolean _speedOK = false;
+	private static boolean _angleOK = false;
+	private static boolean _headingOK = false;
+	private static boolean _visionOK = false;
+	private static int _reason = WHEEL_STOPPED;
+	/** When the shooter last became ready, or 0 while not ready. */
+	private static long _readySinceMillis = 0;
+
+	//// UPDATE ----------------------------------------------------------------
+
+	/**
+	 * Evaluates every condition and the overall readiness.
+	 */
+	public static void update() {
+		// The flywheel controller's own at-speed state, with its tolerance and
+		// hysteresis, so every user agrees with the controller
+		double setpoint = RobotShoot.getTargetSpeedRPM();
+		_speedOK = RobotShoot.isShooterUpToSpeed();
+
+		// Against the clamped target; below SHOOTER_MIN_ANGLE the raw target is never reached
+		double angleError = Math.abs(RobotShoot.getControlledAngleDegrees() - RobotShoot.getShooterAngleDegrees());
+		_angleOK = band(_angleOK, angleError,
+				ANGLE_ENTRY_TOLERANCES * RobotShoot.SHOOTER_ANGLE_TOLERANCE,
+				ANGLE_EXIT_TOLERANCES * RobotShoot.SHOOTER_ANGLE_TOLERANCE);
+
+		double headingError = Math.abs(TargetSpinLogic.getTargetHeadingDegrees() - RobotSensors.gyroChassis.getAngle());
+		_headingOK = band(_headingOK, headingError,
+				HEADING_ENTRY_TOLERANCES * TargetSpinLogic.TARGET_TOLERANCE_DEGREES,
+				HEADING_EXIT_TOLERANCES * TargetSpinLogic.TARGET_TOLERANCE_DEGREES);
+
+		// Confidence is "good" when high, so the bands are mirrored
+		double confidence = TargetTracker.getConfidence();
+		_visionOK = band(_visionOK, -confidence, -VISION_ENTRY_CONFIDENCE, -VISION_EXIT_CONFIDENCE);
+
+		boolean aiming = TargetSpinLogic.isTargeting();
+		boolean followingVision = aiming || TargetShooterSpeedLogic.isTargeting() || RobotShoot.isAutoAngle();
+
+		int reason;
+		if (setpoint <= 0) {
+			reason = WHEEL_STOPPED;
+		} else if (!_speedOK) {
+			reason = SPEED;
+		} else if (RobotShoot.isAngleControlled() && !_angleOK) {
+			reason = ANGLE;
+		} else if (aiming && !_headingOK) {
+			reason = HEADING;
+		} else if (followingVision && !_visionOK) {
+			reason = VISION;
+		} else {
+			reason = READY;
+		}
+
+		if (reason == READY && _reason != READY) {
+			_readySinceMillis = System.currentTimeMillis();
+		} else if (reason != READY) {
+			_readySinceMillis = 0;
+		}
+		_reason = reason;
+
+		SmartDashboard.putBoolean("Shooter Ready", reason == READY);
+		SmartDashboard.putString("Shooter Not Ready Reason", REASON_NAMES[reason]);
+	}
+
+	/**
+	 * Applies hysteresis to one condition.
+	 * @param wasOK The condition's previous state.
+	 * @param error The current error.
+	 * @param entry The error at or below which the condition becomes true.
+	 * @param exit The error above which the condition becomes false.
+	 */
+	private static boolean band( boolean wasOK, double error, double entry, double exit ) {
+		return wasOK ? error <= exit : error <= entry;
+	}
+
+	//// GETTER METHODS --------------------------------------------------------
+
+	/** @return TRUE if a disc fed now would be a good shot. */
+	public static boolean isReady() {
+		return _reason == READY;
+	}
+
+	/**
+	 * Tells why the shooter is not ready.
+	 * @return READY, WHEEL_STOPPED, SPEED, ANGLE, HEADING or VISION.
+	 */
+	public static int getReason() {
+		return _reason;
+	}
+
+	/** @return A short description of getReason(). */
+	public static String getReasonName() {
+		return REASON_NAMES[_reason];
+	}
+
+	/**
+	 * Returns how long the shooter has been ready.
+	 * @return Milliseconds, or 0 if not ready.
+	 */
+	public static long getReadyMillis() {
+		return _readySinceMillis == 0 ? 0 : System.currentTimeMillis() - _readySinceMillis;
+	}
+}
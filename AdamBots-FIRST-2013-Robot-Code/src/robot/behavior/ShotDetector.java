@@ -0,0 +1,264 @@
+package robot.behavior;
+
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import robot.IO.DataIO;
+import robot.sensors.RobotSensors;
+
+/**
+ * Confirms shots from the shooter wheel's speed.  A disc passing through the
+ * wheel slows it sharply, so after each extension of the feeder the wheel
+ * speed is watched for a dip of at least DIP_RPM below its speed when the
+ * feeder extended.  A dip counts as a shot; no dip by NO_FIRE_MILLIS after
+ * the feeder retracts counts as a no-fire, and JAM_FEEDS no-fires in a row
+ * with discs still expected in the magazine flag a jam.
+ *
+ * A feed is confirmed, for ending the feed cycle early, by the dip.  Only
+ * when the wheel is too slow to judge a dip is it confirmed instead by the
+ * disc orientation switches, once a disc seen at the feed has cleared both
+ * of them; see isFeedConfirmed().  Either way the feeder stays out for at
+ * least getMinFeedMillis(), a full stroke as measured on the robot, since
+ * the switches clear as soon as the disc starts to move.
+ *
+ * The feeder must be driven through RobotShoot.setFeeder() so this class sees
+ * each actuation, and update() must be called periodically.
+ * @author Adambots 245
+ */
+public abstract class ShotDetector extends RobotBehavior {
+	//// PRINT FILTERING -------------------------------------------------------
+
+	/** Hide RobotObject field to allow for proper print filtering. */
+	public static boolean verboseOutput = true;
+
+	//// CONSTANTS -------------------------------------------------------------
+
+	/** Discs the robot can hold. */
+	public static final int MAGAZINE_CAPACITY = 4;
+	/** A drop from the speed at feeding of at least this much is a shot. */
+	public static double DIP_RPM = 100;
+	/** Below this speed a disc barely slows the wheel, so feeds are not judged. */
+	public static double MIN_DETECT_RPM = 1000;
+	/** Time after the feeder retracts by which a dip must have been seen. */
+	public static final int NO_FIRE_MILLIS = 300;
+	/** Consecutive no-fires, with discs expected, that flag a jam. */
+	public static final int JAM_FEEDS = 2;
+	/**
+	 * Calibration name of the shortest feed: the measured time for a full
+	 * stroke to push a disc into the wheel (the "after ... ms" of logged
+	 * shots is the time from extension to the dip).
+	 */
+	public static final String FEED_STROKE_NAME = "FEED_STROKE_MILLIS";
+	public static final long DEFAULT_FEED_STROKE_MILLIS = 250;
+	/** Reading of a disc orientation switch pressed by a disc (pulled low). */
+	private static final boolean DISC_PRESENT = false;
+
+	// Feed Confirmations
+	public static final int CONFIRM_NONE = 0;
+	public static final int CONFIRM_DIP = 1;
+	public static final int CONFIRM_SWITCH = 2;
+	private static final String[] CONFIRM_NAMES = { "unconfirmed", "dip", "disc switch" };
+
+	//// PRIVATE VARIABLES -----------------------------------------------------
+
+	private static boolean _feederExtended = false;
+	/** Whether the current feed is still waiting for a dip. */
+	private static boolean _watching = false;
+	private static double _baselineRPM = 0;
+	private static long _feedMillis = 0;
+	private static long _retractMillis = 0;
+	/** How the current feed was confirmed. */
+	private static int _confirmation = CONFIRM_NONE;
+	/** Whether a disc was on an orientation switch when the feeder extended. */
+	private static boolean _discAtFeed = false;
+	private static long _minFeedMillis = DEFAULT_FEED_STROKE_MILLIS;
+
+	private static int _discsRemaining = MAGAZINE_CAPACITY;
+	private static int _shots = 0;
+	private static int _noFires = 0;
+	private static int _consecutiveNoFires = 0;
+	private static boolean _jammed = false;
+	private static double _lastDipRPM = 0;
+	private static long _lastShotMillis = -1;
+
+	//// INITIALIZATION --------------------------------------------------------
+
+	/**
+	 * Reads the feed stroke from the calibration data.
+	 * DataIO.loadCalibrations() must have been called.
+	 */
+	public static void init() {
+		_minFeedMillis = (long) DataIO.getCalibration(FEED_STROKE_NAME, DEFAULT_FEED_STROKE_MILLIS);
+	}
+
+	//// FEEDER ----------------------------------------------------------------
+
+	/**
+	 * Notes a change of the feeder solenoid.  Called by RobotShoot.setFeeder().
+	 * @param extended TRUE if the feeder is now extended.
+	 */
+	static void feederChanged( boolean extended ) {
+		if ( extended == _feederExtended ) {
+			return;
+		}
+		_feederExtended = extended;
+		long now = System.currentTimeMillis();
+		if ( !extended ) {
+			_retractMillis = now;
+			return;
+		}
+
+		if ( _watching ) {
+			noFire();
+		}
+		double rpm = RobotSensors.counterShooterSpeed.pidGet();
+		_feedMillis = now;
+		_watching = rpm >= MIN_DETECT_RPM;
+		_baselineRPM = rpm;
+		_lastDipRPM = 0;
+		_confirmation = CONFIRM_NONE;
+		_discAtFeed = isDiscOnSwitches();
+	}
+
+	private static boolean isDiscOnSwitches() {
+		return RobotSensors.limitDiscTop.get() == DISC_PRESENT || RobotSensors.limitDiscBottom.get() == DISC_PRESENT;
+	}
+
+	/**
+	 * Sets the number of discs in the magazine, such as after loading, and
+	 * clears any jam.
+	 * @param discs Discs now held.
+	 */
+	public static void setDiscsLoaded( int discs ) {
+		_discsRemaining = Math.max(0, Math.min(MAGAZINE_CAPACITY, discs));
+		_consecutiveNoFires = 0;
+		_jammed = false;
+	}
+
+	//// UPDATE ----------------------------------------------------------------
+
+	/**
+	 * Looks for the dip following a feed and publishes the counts.
+	 */
+	public static void update() {
+		if ( SmartDashboard.getBoolean("Discs Reloaded", false) ) {
+			SmartDashboard.putBoolean("Discs Reloaded", false);
+			setDiscsLoaded(MAGAZINE_CAPACITY);
+		}
+
+		// The switches stand in for the dip only when there is no dip to see
+		if ( _feederExtended && _confirmation == CONFIRM_NONE && !_watching
+				&& _discAtFeed && !isDiscOnSwitches() ) {
+			_confirmation = CONFIRM_SWITCH;
+		}
+
+		if ( _watching ) {
+			double dip = _baselineRPM - RobotSensors.counterShooterSpeed.pidGet();
+			_lastDipRPM = Math.max(_lastDipRPM, dip);
+			if ( dip >= DIP_RPM ) {
+				shotDetected();
+			} else if ( !_feederExtended && System.currentTimeMillis() - _retractMillis >= NO_FIRE_MILLIS ) {
+				noFire();
+			}
+		}
+
+		SmartDashboard.putNumber("Discs Remaining", _discsRemaining);
+		SmartDashboard.putNumber("Shots Detected", _shots);
+		SmartDashboard.putNumber("Shooter No-Fires", _noFires);
+		SmartDashboard.putBoolean("Shooter Jammed", _jammed);
+	}
+
+	private static void shotDetected() {
+		_watching = false;
+		if ( _confirmation == CONFIRM_NONE ) {
+			_confirmation = CONFIRM_DIP;
+		}
+		_shots++;
+		_consecutiveNoFires = 0;
+		_jammed = false;
+		_discsRemaining = Math.max(0, _discsRemaining - 1);
+		_lastShotMillis = System.currentTimeMillis() - _feedMillis;
+		DataIO.storeShot();
+		println("ShotDetector :: shot " + _shots + ", dip " + _lastDipRPM + " rpm after " + _lastShotMillis + " ms");
+	}
+
+	private static void noFire() {
+		_watching = false;
+		_noFires++;
+		if ( _discsRemaining > 0 ) {
+			_consecutiveNoFires++;
+			_jammed = _consecutiveNoFires >= JAM_FEEDS;
+		}
+		DataIO.storeShooter("No-fire (dip " + _lastDipRPM + " rpm, " + _discsRemaining + " discs expected)" + (_jammed ? " jammed" : ""));
+		println("ShotDetector :: no-fire, " + _discsRemaining + " discs expected");
+	}
+
+	//// GETTER METHODS --------------------------------------------------------
+
+	/**
+	 * Returns the number of discs believed to be in the magazine: the number
+	 * loaded less the shots detected since.
+	 */
+	public static int getDiscsRemaining() {
+		return _discsRemaining;
+	}
+
+	/** @return Shots detected since the robot started. */
+	public static int getShotCount() {
+		return _shots;
+	}
+
+	/** @return Feeds since the robot started after which no shot was detected. */
+	public static int getNoFireCount() {
+		return _noFires;
+	}
+
+	/**
+	 * Tells whether the last JAM_FEEDS feeds failed to fire while discs were
+	 * expected, suggesting a disc is stuck.
+	 */
+	public static boolean isJammed() {
+		return _jammed;
+	}
+
+	/**
+	 * Tells whether the most recent feed is still waiting for its dip.
+	 */
+	public static boolean isWatching() {
+		return _watching;
+	}
+
+	/**
+	 * Tells whether the current or most recent feed has been confirmed, by a
+	 * dip or (with the wheel too slow to judge) the disc clearing the
+	 * orientation switches.  The feeder can retract once this is true and it
+	 * has been out for getMinFeedMillis().
+	 */
+	public static boolean isFeedConfirmed() {
+		return _confirmation != CONFIRM_NONE;
+	}
+
+	/**
+	 * Tells how the current or most recent feed was confirmed.
+	 * @return CONFIRM_NONE, CONFIRM_DIP or CONFIRM_SWITCH.
+	 */
+	public static int getFeedConfirmation() {
+		return _confirmation;
+	}
+
+	/** @return The shortest feed, in milliseconds: a full stroke. */
+	public static long getMinFeedMillis() {
+		return _minFeedMillis;
+	}
+
+	/** @return A short description of getFeedConfirmation(). */
+	public static String getFeedConfirmationName() {
+		return CONFIRM_NAMES[_confirmation];
+	}
+
+	/**
+	 * Returns the time from extending the feeder to the dip of the last shot.
+	 * @return Milliseconds, or -1 if no shot has been detected.
+	 */
+	public static long getLastShotMillis() {
+		return _lastShotMillis;
+	}
+}
@@ -0,0 +1,248 @@
+package robot.camera;
+
+import com.sun.squawk.util.MathUtils;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import robot.IO.DataIO;
+import robot.RobotObject;
+
+/**
+ * Pinhole model of the camera, used to turn target pixels into distance and
+ * direction.  The focal length, mount height and pitch are read from the
+ * calibration file; calibrate() fits the focal length and pitch from a few
+ * captures at known distances.
+ *
+ * Distance comes from the elevation of the target's center once the pitch has
+ * been calibrated, and from the target's apparent size before then (or when
+ * the elevation gives no sensible answer).
+ * @author Adambots 245
+ */
+public abstract class CameraModel extends RobotObject {
+	//// PRINT FILTERING -------------------------------------------------------
+
+	/** Hide RobotObject field to allow for proper print filtering. */
+	public static boolean verboseOutput = true;
+
+	//// CONSTANTS -------------------------------------------------------------
+
+	/** Image size set by RobotCamera.init() (k160x120). */
+	public static final double IMAGE_WIDTH_PIXELS = 160;
+	public static final double IMAGE_HEIGHT_PIXELS = 120;
+	/** Size of the goal's reflective outline. */
+	public static final double TARGET_WIDTH_INCHES = 62;
+	public static final double TARGET_HEIGHT_INCHES = 20;
+	/** Height of the center of the goal outline above the floor. */
+	public static final double TARGET_CENTER_HEIGHT_INCHES = 100 + TARGET_HEIGHT_INCHES / 2;
+
+	// Calibration Names
+	public static final String FOCAL_LENGTH_NAME = "CAMERA_FOCAL_LENGTH_PIXELS";
+	public static final String HEIGHT_NAME = "CAMERA_HEIGHT_INCHES";
+	public static final String PITCH_NAME = "CAMERA_PITCH_DEGREES";
+
+	/**
+	 * Focal length reproducing the old empirical fit
+	 * (distance = 14874 / average of width and height).
+	 */
+	private static final double DEFAULT_FOCAL_LENGTH_PIXELS = 14874.0 / ((TARGET_WIDTH_INCHES + TARGET_HEIGHT_INCHES) / 2);
+	private static final double DEFAULT_HEIGHT_INCHES = 12;
+
+	/** Most captures used by one calibration. */
+	public static final int MAX_SAMPLES = 10;
+
+	//// PRIVATE VARIABLES -----------------------------------------------------
+
+	private static double _focalLengthPixels = DEFAULT_FOCAL_LENGTH_PIXELS;
+	private static double _heightInches = DEFAULT_HEIGHT_INCHES;
+	private static double _pitchDegrees = 0;
+	/** Whether _pitchDegrees has been calibrated; elevation is unusable until then. */
+	private static boolean _pitchKnown = false;
+
+	// Calibration Samples
+	private static final double[] _sampleRow = new double[MAX_SAMPLES];
+	private static final double[] _sampleSize = new double[MAX_SAMPLES];
+	private static final double[] _sampleDistance = new double[MAX_SAMPLES];
+	private static int _sampleCount = 0;
+
+	//// INITIALIZATION --------------------------------------------------------
+
+	/**
+	 * Reads the model from the calibration data.  DataIO.loadCalibrations()
+	 * must have been called.
+	 */
+	public static synchronized void init() {
+		_focalLengthPixels = DataIO.getCalibration(FOCAL_LENGTH_NAME, DEFAULT_FOCAL_LENGTH_PIXELS);
+		_heightInches = DataIO.getCalibration(HEIGHT_NAME, DEFAULT_HEIGHT_INCHES);
+		_pitchDegrees = DataIO.getCalibration(PITCH_NAME, Double.NaN);
+		_pitchKnown = !Double.isNaN(_pitchDegrees);
+		if ( !_pitchKnown ) {
+			_pitchDegrees = 0;
+		}
+	}
+
+	//// PROJECTION ------------------------------------------------------------
+
+	/**
+	 * Calculates the horizontal direction to a target.
+	 * @param target The target.
+	 * @return Degrees; negative is left of center.
+	 */
+	public static synchronized double angleDegrees( RobotCamera.Target target ) {
+		double column = target.x + target.w / 2.0 - IMAGE_WIDTH_PIXELS / 2;
+		return Math.toDegrees(MathUtils.atan(column / _focalLengthPixels));
+	}
+
+	/**
+	 * Calculates the distance to a target.
+	 * @param target The target.
+	 * @return Horizontal distance along the floor in inches.
+	 */
+	public static synchronized double distanceInches( RobotCamera.Target target ) {
+		if ( _pitchKnown ) {
+			double d = elevationDistance(target.y + target.h / 2.0);
+			if ( d > 0 ) {
+				return d;
+			}
+		}
+		return sizeDistance((target.w + target.h) / 2.0);
+	}
+
+	/**
+	 * Distance from the elevation angle of the target's center.
+	 * @param row Image row of the target's center.
+	 * @return Inches, or a negative number if the target is not above the horizon.
+	 */
+	private static double elevationDistance( double row ) {
+		double elevation = Math.toRadians(_pitchDegrees)
+				+ MathUtils.atan((IMAGE_HEIGHT_PIXELS / 2 - row) / _focalLengthPixels);
+		if ( elevation <= 0 ) {
+			return -1;
+		}
+		return (TARGET_CENTER_HEIGHT_INCHES - _heightInches) / Math.tan(elevation);
+	}
+
+	/**
+	 * Distance from the target's apparent size.
+	 * @param sizePixels Average of the target's width and height.
+	 */
+	private static double sizeDistance( double sizePixels ) {
+		return _focalLengthPixels * (TARGET_WIDTH_INCHES + TARGET_HEIGHT_INCHES) / 2 / sizePixels;
+	}
+
+	//// CALIBRATION -----------------------------------------------------------
+
+	/**
+	 * Records a capture of the target from a known distance.
+	 * @param target The target seen.
+	 * @param distanceInches Measured distance from the camera to the goal wall.
+	 * @return FALSE if the distance is not positive (such as an unset
+	 * dashboard field) or MAX_SAMPLES captures are already recorded.
+	 */
+	public static synchronized boolean addSample( RobotCamera.Target target, double distanceInches ) {
+		if ( !(distanceInches > 0) ) {
+			println("CameraModel :: capture ignored, distance " + distanceInches);
+			return false;
+		}
+		if ( _sampleCount == MAX_SAMPLES ) {
+			return false;
+		}
+		_sampleRow[_sampleCount] = target.y + target.h / 2.0;
+		_sampleSize[_sampleCount] = (target.w + target.h) / 2.0;
+		_sampleDistance[_sampleCount] = distanceInches;
+		_sampleCount++;
+		return true;
+	}
+
+	/** @return Number of captures recorded for calibration. */
+	public static synchronized int getSampleCount() {
+		return _sampleCount;
+	}
+
+	/**
+	 * Fits the focal length and pitch to the recorded captures by least
+	 * squares, then stores them in the calibration file and clears the
+	 * captures.  The mount height is measured, not fitted.
+	 * @return RMS distance error of the fitted model in inches, or -1 if
+	 * fewer than two captures were recorded or the fit is not usable, in
+	 * which case nothing is changed or saved.
+	 */
+	public static synchronized double calibrate() {
+		if ( _sampleCount < 2 ) {
+			return -1;
+		}
+
+		// size = f * S / d is linear in f
+		double s = (TARGET_WIDTH_INCHES + TARGET_HEIGHT_INCHES) / 2;
+		double sxy = 0;
+		double sxx = 0;
+		for ( int i = 0; i < _sampleCount; i++ ) {
+			double x = s / _sampleDistance[i];
+			sxy += x * _sampleSize[i];
+			sxx += x * x;
+		}
+		double focalLength = sxy / sxx;
+		if ( !isUsable(focalLength) || focalLength <= 0 ) {
+			println("CameraModel :: fit rejected, f=" + focalLength);
+			return -1;
+		}
+
+		// Each capture implies a pitch; the least squares constant is their mean
+		double pitch = 0;
+		for ( int i = 0; i < _sampleCount; i++ ) {
+			double elevation = MathUtils.atan((TARGET_CENTER_HEIGHT_INCHES - _heightInches) / _sampleDistance[i]);
+			pitch += elevation - MathUtils.atan((IMAGE_HEIGHT_PIXELS / 2 - _sampleRow[i]) / focalLength);
+		}
+		double pitchDegrees = Math.toDegrees(pitch / _sampleCount);
+		if ( !isUsable(pitchDegrees) ) {
+			println("CameraModel :: fit rejected, pitch=" + pitchDegrees);
+			return -1;
+		}
+		_focalLengthPixels = focalLength;
+		_pitchDegrees = pitchDegrees;
+		_pitchKnown = true;
+
+		double squaredError = 0;
+		for ( int i = 0; i < _sampleCount; i++ ) {
+			double error = elevationDistance(_sampleRow[i]) - _sampleDistance[i];
+			squaredError += error * error;
+		}
+		double rms = Math.sqrt(squaredError / _sampleCount);
+		println("CameraModel :: f=" + _focalLengthPixels + " pitch=" + _pitchDegrees + " rms=" + rms);
+
+		DataIO.setCalibration(FOCAL_LENGTH_NAME, _focalLengthPixels);
+		DataIO.setCalibration(HEIGHT_NAME, _heightInches);
+		DataIO.setCalibration(PITCH_NAME, _pitchDegrees);
+		DataIO.saveCalibrations();
+		_sampleCount = 0;
+		return rms;
+	}
+
+	private static boolean isUsable( double value ) {
+		return !Double.isNaN(value) && !Double.isInfinite(value);
+	}
+
+	/**
+	 * Runs the calibration from the SmartDashboard during test mode.  Set
+	 * "Camera Calib Distance" and press "Camera Calib Capture" at each of a
+	 * few distances, then press "Camera Calib Fit".  "Camera Calib Thresholds"
+	 * recalibrates the color thresholds while aimed at the target.
+	 */
+	public static void calibratePeriodic() {
+		RobotCamera.requestFrames();
+		if ( SmartDashboard.getBoolean("Camera Calib Capture", false) && RobotCamera.imageIsFresh() ) {
+			SmartDashboard.putBoolean("Camera Calib Capture", false);
+			RobotCamera.Target target = RobotCamera.getTarget();
+			RobotCamera.imageUnfresh();
+			if ( target != null ) {
+				addSample(target, SmartDashboard.getNumber("Camera Calib Distance", 0));
+			}
+		}
+		if ( SmartDashboard.getBoolean("Camera Calib Fit", false) ) {
+			SmartDashboard.putBoolean("Camera Calib Fit", false);
+			SmartDashboard.putNumber("Camera Calib RMS Error", calibrate());
+		}
+		if ( SmartDashboard.getBoolean("Camera Calib Thresholds", false) ) {
+			SmartDashboard.putBoolean("Camera Calib Thresholds", false);
+			RobotCamera.requestThresholdCalibration();
+		}
+		SmartDashboard.putNumber("Camera Calib Samples", getSampleCount());
+	}
+}
@@ -0,0 +1,277 @@
+package robot.camera;
+
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import robot.IO.DataIO;
+import robot.RobotObject;
+
+/**
+ * Keeps rolling timing statistics for the vision pipeline.  RobotCamera
+ * reports when each capture starts, when the image arrives and when processing
+ * ends; TargetSpinLogic (through RobotCamera.imageUnfresh()) reports when the
+ * result is consumed.  All samples are kept in fixed-size rings so that
+ * recording a frame never allocates.
+ *
+ * Recording happens on the CameraThread while the getters are called from the
+ * main loop, so every method that touches the rings is synchronized.
+ * @author Adambots 245
+ */
+public abstract class CameraStats extends RobotObject {
+	//// PRINT FILTERING -------------------------------------------------------
+
+	/** Hide RobotObject field to allow for proper print filtering. */
+	public static boolean verboseOutput = true;
+
+	//// CONSTANTS -------------------------------------------------------------
+
+	/** Number of recent frames kept for the rolling statistics. */
+	public static final int WINDOW = 50;
+	/** Name of the report file written by writeReport(). */
+	public static final String REPORT_FILE = "cameraStats";
+
+	//// PRIVATE VARIABLES -----------------------------------------------------
+
+	/** Capture start times of recent frames, used for the frame rate. */
+	private static final long[] _frameTimes = new long[WINDOW];
+	/** Milliseconds spent in AxisCamera.getImage() for recent frames. */
+	private static final long[] _captureMillis = new long[WINDOW];
+	/** Milliseconds spent processing recent frames (greenBox and calculations). */
+	private static final long[] _processMillis = new long[WINDOW];
+	/** Milliseconds from capture start to consumption for recent frames. */
+	private static final long[] _latencyMillis = new long[WINDOW];
+	/** Scratch array used to sort samples when computing percentiles. */
+	private static final long[] _sorted = new long[WINDOW];
+
+	private static int _frameIndex = 0;
+	private static int _frameCount = 0;
+	private static int _latencyIndex = 0;
+	private static int _latencyCount = 0;
+
+	/** Capture start time of the most recent successful frame. */
+	private static long _lastCaptureStart = 0;
+	/** Processing end time of the most recent successful frame. */
+	private static long _lastProcessEnd = 0;
+	/** Whether the most recent successful frame has been consumed. */
+	private static boolean _lastConsumed = true;
+
+	// Totals Since Reset
+	private static int _totalFrames = 0;
+	private static int _failedFrames = 0;
+	private static int _unconsumedFrames = 0;
+
+	//// RECORDING -------------------------------------------------------------
+
+	/**
+	 * Records a successfully processed frame.  Called by RobotCamera.work().
+	 * @param captureStart Time (ms) immediately before the image was requested.
+	 * @param imageReceived Time (ms) at which the image was returned.
+	 * @param processEnd Time (ms) at which distance and angle were calculated.
+	 */
+	public static synchronized void recordFrame( long captureStart, long imageReceived, long processEnd ) {
+		_frameTimes[_frameIndex] = captureStart;
+		_captureMillis[_frameIndex] = imageReceived - captureStart;
+		_processMillis[_frameIndex] = processEnd - imageReceived;
+		_frameIndex = (_frameIndex + 1) % WINDOW;
+		if ( _frameCount < WINDOW ) {
+			_frameCount++;
+		}
+
+		// The previous result was replaced before anyone used it
+		if ( !_lastConsumed ) {
+			_unconsumedFrames++;
+		}
+
+		_lastCaptureStart = captureStart;
+		_lastProcessEnd = processEnd;
+		_lastConsumed = false;
+		_totalFrames++;
+	}
+
+	/**
+	 * Records a frame which could not be captured or in which no target was
+	 * found.  Called by RobotCamera.work().
+	 */
+	public static synchronized void recordFailure() {
+		_failedFrames++;
+	}
+
+	/**
+	 * Records that the most recent frame has been consumed by targeting logic.
+	 * Only the first consumption of each frame contributes a latency sample.
+	 * @param consumedMillis Time (ms) at which the result was consumed.
+	 */
+	public static synchronized void recordConsumed( long consumedMillis ) {
+		if ( _lastConsumed ) {
+			return;
+		}
+		_lastConsumed = true;
+		_latencyMillis[_latencyIndex] = consumedMillis - _lastCaptureStart;
+		_latencyIndex = (_latencyIndex + 1) % WINDOW;
+		if ( _latencyCount < WINDOW ) {
+			_latencyCount++;
+		}
+	}
+
+	/**
+	 * Clears every statistic.
+	 */
+	public static synchronized void reset() {
+		_frameIndex = 0;
+		_frameCount = 0;
+		_latencyIndex = 0;
+		_latencyCount = 0;
+		_lastConsumed = true;
+		_totalFrames = 0;
+		_failedFrames = 0;
+		_unconsumedFrames = 0;
+	}
+
+	//// GETTER METHODS --------------------------------------------------------
+
+	/**
+	 * Returns the capture start time of the most recent processed frame.
+	 * @return Time in milliseconds (System.currentTimeMillis() base).
+	 */
+	public static synchronized long getLastCaptureMillis() {
+		return _lastCaptureStart;
+	}
+
+	/**
+	 * Returns the time at which processing of the most recent frame finished.
+	 * @return Time in milliseconds (System.currentTimeMillis() base).
+	 */
+	public static synchronized long getLastProcessEndMillis() {
+		return _lastProcessEnd;
+	}
+
+	/**
+	 * Returns the age of the most recent processed result.
+	 * @return Milliseconds since the most recent frame was captured.
+	 */
+	public static synchronized long getAgeMillis() {
+		return System.currentTimeMillis() - _lastCaptureStart;
+	}
+
+	/**
+	 * Returns the rolling frame rate measured from capture start times.
+	 * @return Frames per second over the last WINDOW frames.
+	 */
+	public static synchronized double getFPS() {
+		if ( _frameCount < 2 ) {
+			return 0;
+		}
+		int newest = (_frameIndex + WINDOW - 1) % WINDOW;
+		int oldest = (_frameIndex + WINDOW - _frameCount) % WINDOW;
+		long span = _frameTimes[newest] - _frameTimes[oldest];
+		return span <= 0 ? 0 : (_frameCount - 1) * 1000.0 / span;
+	}
+
+	/**
+	 * Returns a percentile of the time spent processing recent frames.
+	 * @param percentile Percentile to report (0-100).
+	 * @return Processing time in milliseconds.
+	 */
+	public static synchronized long getProcessPercentileMillis( double percentile ) {
+		return percentile(_processMillis, _frameCount, percentile);
+	}
+
+	/**
+	 * Returns a percentile of the time spent waiting for AxisCamera.getImage().
+	 * @param percentile Percentile to report (0-100).
+	 * @return Capture time in milliseconds.
+	 */
+	public static synchronized long getCapturePercentileMillis( double percentile ) {
+		return percentile(_captureMillis, _frameCount, percentile);
+	}
+
+	/**
+	 * Returns a percentile of the end-to-end latency, from capture start to
+	 * consumption by targeting logic.
+	 * @param percentile Percentile to report (0-100).
+	 * @return Latency in milliseconds.
+	 */
+	public static synchronized long getLatencyPercentileMillis( double percentile ) {
+		return percentile(_latencyMillis, _latencyCount, percentile);
+	}
+
+	/** @return Frames processed successfully since the last reset. */
+	public static synchronized int getTotalFrames() {
+		return _totalFrames;
+	}
+
+	/** @return Frames that failed to capture or contained no target. */
+	public static synchronized int getFailedFrames() {
+		return _failedFrames;
+	}
+
+	/** @return Frames replaced by a newer frame before being consumed. */
+	public static synchronized int getUnconsumedFrames() {
+		return _unconsumedFrames;
+	}
+
+	//// OUTPUT ----------------------------------------------------------------
+
+	/**
+	 * Publishes the statistics to the SmartDashboard.
+	 */
+	public static void putDashboard() {
+		SmartDashboard.putNumber("cameraFPS", getFPS());
+		SmartDashboard.putNumber("cameraProcessMillisP50", getProcessPercentileMillis(50));
+		SmartDashboard.putNumber("cameraProcessMillisP90", getProcessPercentileMillis(90));
+		SmartDashboard.putNumber("cameraLatencyMillisP50", getLatencyPercentileMillis(50));
+		SmartDashboard.putNumber("cameraLatencyMillisP90", getLatencyPercentileMillis(90));
+		SmartDashboard.putNumber("cameraFailedFrames", getFailedFrames());
+		SmartDashboard.putNumber("cameraUnconsumedFrames", getUnconsumedFrames());
+	}
+
+	/**
+	 * Formats the statistics as a plain-text report.
+	 * @return A multi-line report.
+	 */
+	public static String getReport() {
+		return "Camera Statistics" + "\n"
+				+ "frames\t" + getTotalFrames() + "\n"
+				+ "failed\t" + getFailedFrames() + "\n"
+				+ "unconsumed\t" + getUnconsumedFrames() + "\n"
+				+ "fps\t" + getFPS() + "\n"
+				+ "capture ms (p50/p90/p99)\t" + getCapturePercentileMillis(50) + "/" + getCapturePercentileMillis(90) + "/" + getCapturePercentileMillis(99) + "\n"
+				+ "process ms (p50/p90/p99)\t" + getProcessPercentileMillis(50) + "/" + getProcessPercentileMillis(90) + "/" + getProcessPercentileMillis(99) + "\n"
+				+ "latency ms (p50/p90/p99)\t" + getLatencyPercentileMillis(50) + "/" + getLatencyPercentileMillis(90) + "/" + getLatencyPercentileMillis(99) + "\n";
+	}
+
+	/**
+	 * Writes the report to the cRIO so it can be retrieved from a desktop.
+	 * Does nothing if no frames have been processed.
+	 */
+	public static void writeReport() {
+		if ( getTotalFrames() + getFailedFrames() > 0 ) {
+			DataIO.writeToFile(REPORT_FILE, getReport());
+		}
+	}
+
+	//// PERCENTILES -----------------------------------------------------------
+
+	/**
+	 * Computes a percentile of the first count entries of a ring by sorting a
+	 * copy into the scratch array.  Callers must hold the class lock.
+	 */
+	private static long percentile( long[] samples, int count, double percentile ) {
+		if ( count == 0 ) {
+			return 0;
+		}
+		System.arraycopy(samples, 0, _sorted, 0, count);
+
+		// Insertion sort; the window is small
+		for ( int i = 1; i < count; i++ ) {
+			long v = _sorted[i];
+			int j = i - 1;
+			while ( j >= 0 && _sorted[j] > v ) {
+				_sorted[j + 1] = _sorted[j];
+				j--;
+			}
+			_sorted[j + 1] = v;
+		}
+
+		int index = (int) (percentile / 100.0 * (count - 1) + 0.5);
+		return _sorted[Math.max(0, Math.min(count - 1, index))];
+	}
+}
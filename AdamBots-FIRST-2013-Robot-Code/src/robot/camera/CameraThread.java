@@ -4,26 +4,165 @@
  */
 package robot.camera;
 
-import robot.RobotMain;
-import robot.control.MagicBox;
-
-
-
 /**
- * A Java thread which periodically calls RobotCamera.work() to avoid blocking computation.
+ * A Java thread which calls RobotCamera.work() to avoid blocking computation.
+ * The thread sleeps without polling until a consumer calls
+ * RobotCamera.requestFrames(), then paces itself to the rate at which the
+ * camera actually delivers images.  When the main loop reports that it is
+ * overrunning, the thread stretches its period to give the loop more time.
+ *
+ * The frame interval is measured only between arrivals the thread saw happen
+ * while polling, so its own sleeps (including the backoff) never enter the
+ * measurement.  Waking to find an image already waiting means the thread
+ * overslept, so without backoff the estimate is shortened until arrivals are
+ * seen again.
  * @author Nathan
  */
 public class CameraThread implements Runnable
 {
+	//// CONSTANTS -------------------------------------------------------------
+
+	/** Interval assumed before any frames have been measured (20 fps). */
+	public static final long NOMINAL_FRAME_MILLIS = 50;
+	/** Sleep between checks for a fresh image once a frame is due. */
+	public static final long POLL_MILLIS = 5;
+	/** Main loop periods longer than this count as an overrun. */
+	public static final long LOOP_OVERRUN_MILLIS = 30;
+	/** Loop periods longer than this are gaps (mode changes), not overruns. */
+	public static final long LOOP_GAP_MILLIS = 1000;
+	/** The frame period is stretched by at most (1 + MAX_BACKOFF). */
+	public static final double MAX_BACKOFF = 3.0;
+	/** Backoff added for each overrunning loop. */
+	public static final double BACKOFF_STEP = 0.5;
+	/** Backoff removed for each healthy loop. */
+	public static final double BACKOFF_DECAY = 0.05;
+	/** The frame interval estimate is shortened by this factor after oversleeping. */
+	public static final double OVERSLEEP_SHRINK = 0.9;
+	/** Shortest frame interval estimate (100 fps). */
+	public static final double MIN_FRAME_MILLIS = 10;
+
+	//// PRIVATE VARIABLES -----------------------------------------------------
+
+	/** Smoothed interval between frames delivered by the camera. */
+	private static double _frameMillis = NOMINAL_FRAME_MILLIS;
+	/** Extra fraction of a frame period to sleep while the main loop overruns. */
+	private static double _backoff = 0;
+	/** Time of the previous arrival seen while polling, or 0 if unknown. */
+	private long _lastArrivalMillis = 0;
+	/** Whether the thread has polled and found no image since the last work(). */
+	private boolean _polled = false;
+	/** Whether the thread slept for the frame period after the last work(). */
+	private boolean _slept = false;
+
+	//// LOOP LOAD -------------------------------------------------------------
+
+	/**
+	 * Reports the period of the most recent main loop iteration, so the camera
+	 * can slow down while the control loop is overrunning.
+	 * @param periodMillis Milliseconds between the last two loop iterations.
+	 */
+	public static synchronized void reportLoopPeriod(long periodMillis) {
+		if (periodMillis > LOOP_GAP_MILLIS) {
+			return;
+		}
+		if (periodMillis > LOOP_OVERRUN_MILLIS) {
+			_backoff = Math.min(MAX_BACKOFF, _backoff + BACKOFF_STEP);
+		} else {
+			_backoff = Math.max(0, _backoff - BACKOFF_DECAY);
+		}
+	}
+
+	/**
+	 * Returns how far the camera period is currently stretched.
+	 * @return Backoff (0 when the main loop is healthy).
+	 */
+	public static synchronized double getBackoff() {
+		return _backoff;
+	}
+
+	/**
+	 * Returns the measured interval between frames delivered by the camera.
+	 * @return Milliseconds per frame.
+	 */
+	public static synchronized double getFrameMillis() {
+		return _frameMillis;
+	}
+
+	private static synchronized long getSleepMillis(long workMillis) {
+		return (long) (_frameMillis * (1 + _backoff)) - workMillis - POLL_MILLIS;
+	}
+
+	private static synchronized void recordFrameInterval(long intervalMillis) {
+		if (intervalMillis > 0 && intervalMillis < LOOP_GAP_MILLIS) {
+			_frameMillis += 0.2 * (intervalMillis - _frameMillis);
+		}
+	}
+
+	/**
+	 * Shortens the frame interval estimate after the thread slept past an
+	 * arrival.  Not while backing off, when oversleeping is intended.
+	 */
+	private static synchronized void recordOversleep() {
+		if (_backoff == 0) {
+			_frameMillis = Math.max(MIN_FRAME_MILLIS, _frameMillis * OVERSLEEP_SHRINK);
+		}
+	}
+
+	/**
+	 * Notes a fresh image found by the thread.
+	 * @param now The time the image was found.
+	 */
+	private void recordArrival(long now) {
+		if (_polled) {
+			// Arrived while polling, so now is within POLL_MILLIS of the arrival
+			if (_lastArrivalMillis != 0) {
+				recordFrameInterval(now - _lastArrivalMillis);
+			}
+			_lastArrivalMillis = now;
+		} else {
+			// Already waiting; the arrival time is unknown
+			if (_slept) {
+				recordOversleep();
+			}
+			_lastArrivalMillis = 0;
+		}
+		_polled = false;
+		_slept = false;
+	}
+
+	//// RUN -------------------------------------------------------------------
+
 	public void run()
 	{
+		// The control loop always takes precedence over vision
+		Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
+
 		while (true)
 		{
-			if (!RobotMain.getInstance().isAutonomous() && MagicBox.getDigitalIn(7)) {
-				RobotCamera.work();
-			}
 			try {
-				Thread.sleep(20);
+				// Blocks without using the CPU until someone wants frames
+				if (RobotCamera.awaitRequest()) {
+					_lastArrivalMillis = 0;
+					_polled = false;
+					_slept = false;
+				}
+
+				if (!RobotCamera.hasFreshImage()) {
+					_polled = true;
+					Thread.sleep(POLL_MILLIS);
+					continue;
+				}
+
+				long start = System.currentTimeMillis();
+				recordArrival(start);
+				RobotCamera.work();
+
+				// Sleep until shortly before the next frame is expected
+				long sleep = getSleepMillis(System.currentTimeMillis() - start);
+				if (sleep > 0) {
+					_slept = true;
+					Thread.sleep(sleep);
+				}
 			} catch (Exception e) {
 				System.err.print(e);
 			}
@@ -0,0 +1,172 @@
+package robot.camera;
+
+import edu.wpi.first.wpilibj.image.ColorImage;
+import edu.wpi.first.wpilibj.image.NIVisionException;
+import robot.IO.DataIO;
+
+/**
+ * Saves an occasional camera frame, with the targets found in it, to the
+ * cRIO's flash so misdetections can be examined afterwards.  RobotCamera
+ * offers frames from the CameraThread; an accepted frame is handed over
+ * rather than copied, and is written and freed by this class's own
+ * low-priority thread, so the vision thread never waits on flash.
+ *
+ * The queue holds at most QUEUE_SIZE frames, frames are accepted at most
+ * once per MIN_INTERVAL_MILLIS (frames without an accepted target) or
+ * ROUTINE_INTERVAL_MILLIS (all others), and file names rotate through
+ * MAX_FILES so flash use is bounded.  Each image is written as
+ * debugFrameNN.jpg beside a debugFrameNN.txt listing the targets; the
+ * image's planes hold hue, saturation and value, as thresholded.
+ * @author Adambots 245
+ */
+public class DebugFrameSink implements Runnable {
+	//// CONSTANTS -------------------------------------------------------------
+
+	/** Frames waiting to be written; further offers are refused. */
+	public static final int QUEUE_SIZE = 2;
+	/** Shortest interval between saved frames. */
+	public static final long MIN_INTERVAL_MILLIS = 1000;
+	/** Interval between saved frames when nothing went wrong. */
+	public static final long ROUTINE_INTERVAL_MILLIS = 10000;
+	/** Number of file names used before the oldest is overwritten. */
+	public static final int MAX_FILES = 50;
+
+	//// PRIVATE VARIABLES -----------------------------------------------------
+
+	/** Whether frames are accepted at all. */
+	private static boolean _enabled = false;
+	private static Thread _thread = null;
+
+	// Queue (guarded by _lock); entries are preallocated
+	private static final Object _lock = new Object();
+	private static final ColorImage[] _images = new ColorImage[QUEUE_SIZE];
+	private static final RobotCamera.Target[][] _targets = new RobotCamera.Target[QUEUE_SIZE][RobotCamera.MAX_TARGETS];
+	private static final int[] _targetCounts = new int[QUEUE_SIZE];
+	private static final String[] _reasons = new String[QUEUE_SIZE];
+	private static final long[] _times = new long[QUEUE_SIZE];
+	private static int _head = 0;
+	private static int _size = 0;
+
+	private static long _lastAcceptedMillis = 0;
+	private static int _fileNumber = 0;
+	private static int _framesWritten = 0;
+
+	//// CONTROL ---------------------------------------------------------------
+
+	/**
+	 * Starts the writer thread and begins accepting frames.
+	 */
+	public static synchronized void start() {
+		_enabled = true;
+		if (_thread == null || !_thread.isAlive()) {
+			_thread = new Thread(new DebugFrameSink());
+			_thread.start();
+		}
+	}
+
+	/**
+	 * Stops accepting frames.  Queued frames are still written.
+	 */
+	public static synchronized void stop() {
+		_enabled = false;
+	}
+
+	//// OFFERING --------------------------------------------------------------
+
+	/**
+	 * Offers a frame for saving.  If it is accepted the sink owns the image
+	 * and will free it; otherwise the caller still owns it.  Never blocks.
+	 * @param image The processed frame.
+	 * @param reason Why the frame is interesting, or null for a routine frame.
+	 * @return TRUE if the image was accepted.
+	 */
+	public static boolean offer( ColorImage image, String reason ) {
+		if (!_enabled || image == null) {
+			return false;
+		}
+		long now = System.currentTimeMillis();
+		synchronized (_lock) {
+			long interval = reason == null ? ROUTINE_INTERVAL_MILLIS : MIN_INTERVAL_MILLIS;
+			if (_size == QUEUE_SIZE || now - _lastAcceptedMillis < interval) {
+				return false;
+			}
+			int i = (_head + _size) % QUEUE_SIZE;
+			_images[i] = image;
+			_targetCounts[i] = RobotCamera.getTargets(_targets[i]);
+			_reasons[i] = reason == null ? "routine" : reason;
+			_times[i] = now;
+			_size++;
+			_lastAcceptedMillis = now;
+			_lock.notify();
+			return true;
+		}
+	}
+
+	/** @return Frames written since the robot started. */
+	public static int getFramesWritten() {
+		synchronized (_lock) {
+			return _framesWritten;
+		}
+	}
+
+	//// WRITER ----------------------------------------------------------------
+
+	public void run() {
+		// Flash writes must never delay the control loop or vision
+		Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
+
+		while (true) {
+			ColorImage image;
+			String description;
+			String name;
+			synchronized (_lock) {
+				while (_size == 0) {
+					try {
+						_lock.wait();
+					}
+					catch (InterruptedException e) {
+					}
+				}
+				image = _images[_head];
+				_images[_head] = null;
+				description = describe(_head);
+				_head = (_head + 1) % QUEUE_SIZE;
+				_size--;
+				name = "debugFrame" + (_fileNumber < 10 ? "0" : "") + _fileNumber;
+				_fileNumber = (_fileNumber + 1) % MAX_FILES;
+			}
+
+			try {
+				image.write("/" + name + ".jpg");
+				DataIO.writeToFile(name, description);
+				synchronized (_lock) {
+					_framesWritten++;
+				}
+			}
+			catch (NIVisionException e) {
+				System.err.print(e);
+			}
+			finally {
+				try {
+					image.free();
+				}
+				catch (NIVisionException e) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * Lists the targets of a queue entry.  Callers must hold _lock.
+	 */
+	private static String describe( int i ) {
+		String s = "time\t" + _times[i] + "\n"
+				+ "reason\t" + _reasons[i] + "\n"
+				+ "targets (x y w h score)\t" + _targetCounts[i] + "\n";
+		for (int t = 0; t < _targetCounts[i]; t++) {
+			RobotCamera.Target target = _targets[i][t];
+			s += target.x + " " + target.y + " " + target.w + " " + target.h + " " + target.score + "\n";
+		}
+		return s;
+	}
+}
@@ -0,0 +1,386 @@
+package robot.camera;
+
+import com.sun.cldc.jna.Pointer;
+import edu.wpi.first.wpilibj.image.ColorImage;
+import edu.wpi.first.wpilibj.image.HSLImage;
+import edu.wpi.first.wpilibj.image.NIVision;
+import edu.wpi.first.wpilibj.image.NIVisionException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import javax.microedition.io.Connector;
+import javax.microedition.io.StreamConnection;
+
+/**
+ * Reads the Axis camera's MJPEG stream on its own thread.  Compressed frames
+ * are copied into a small ring as they arrive; nothing is decoded until
+ * RobotCamera asks for the newest frame, and frames replaced before anyone
+ * asked are simply skipped.  This avoids both the request round-trip of
+ * AxisCamera.getImage() and decoding frames that will never be used.
+ *
+ * The host is configurable, so a desktop serving recorded MJPEG over HTTP can
+ * stand in for the camera.  A recording on the cRIO can stand in too: a host
+ * starting with "file://" names a file holding a captured response (HTTP
+ * header and multipart body, as saved by "curl -i"), which is replayed through
+ * the same parser at REPLAY_FRAME_MILLIS per frame, from the start again at
+ * its end.  The stream disconnects while nobody has requested frames for a
+ * while and reconnects on the next request.
+ *
+ * When streaming, AxisCamera is not used at all, since its own image task
+ * would fetch every frame a second time.  Instead the camera settings passed
+ * to configureCamera() are written once over HTTP before the first connection.
+ * @author Adambots 245
+ */
+public class MjpegStream implements Runnable {
+	//// CONSTANTS -------------------------------------------------------------
+
+	/** Path of the MJPEG stream on an Axis camera. */
+	public static final String DEFAULT_PATH = "/mjpg/video.mjpg";
+	/** Base64 of the camera's "frc:frc" account. */
+	private static final String AUTHORIZATION = "ZnJjOmZyYw==";
+	/** Number of compressed frames buffered. */
+	public static final int RING_SIZE = 3;
+	/** Largest compressed frame accepted; larger frames are dropped. */
+	public static final int MAX_FRAME_BYTES = 65536;
+	/** Frames older than this are not worth decoding. */
+	public static final long STALE_MILLIS = 200;
+	/** Time without a frame request after which the stream disconnects. */
+	public static final long IDLE_MILLIS = 2000;
+	/** Wait between connection attempts. */
+	public static final long RETRY_MILLIS = 1000;
+	/** Hosts starting with this are recordings on the cRIO. */
+	public static final String RECORDING_PREFIX = "file://";
+	/** Frame period when replaying a recording (20 fps). */
+	public static final long REPLAY_FRAME_MILLIS = 50;
+	/** Path of the Axis parameter interface. */
+	private static final String PARAMETER_PATH = "/axis-cgi/admin/param.cgi?action=update";
+
+	//// PRIVATE VARIABLES -----------------------------------------------------
+
+	private final String _host;
+	private final String _path;
+	private final boolean _recorded;
+	/** Camera settings still to be written, or null. */
+	private String _cameraParameters = null;
+
+	// Frame Ring (guarded by this)
+	private final byte[][] _frames = new byte[RING_SIZE][MAX_FRAME_BYTES];
+	private final int[] _lengths = new int[RING_SIZE];
+	/** Time at which each frame began to arrive. */
+	private final long[] _times = new long[RING_SIZE];
+	/** Slot holding the newest complete frame, or -1. */
+	private int _newest = -1;
+	/** Number of frames completed; identifies the newest frame. */
+	private int _newestSequence = 0;
+	/** Sequence number of the last frame decoded. */
+	private int _decodedSequence = 0;
+	private long _decodedFrameMillis = 0;
+
+	/** Native buffer handed to the JPEG decoder. */
+	private final Pointer _jpeg = new Pointer(MAX_FRAME_BYTES);
+
+	// Reader State (reader thread only)
+	private InputStream _in;
+	private final byte[] _buffer = new byte[4096];
+	private int _bufferPosition = 0;
+	private int _bufferLength = 0;
+	private final StringBuffer _line = new StringBuffer();
+
+	// Statistics
+	private int _framesRead = 0;
+	private int _framesSkipped = 0;
+	private int _framesDropped = 0;
+
+	//// CONSTRUCTOR -----------------------------------------------------------
+
+	/**
+	 * @param host Address of the camera (or stand-in), optionally with ":port".
+	 * @param path Path of the MJPEG stream on that host.
+	 */
+	public MjpegStream( String host, String path ) {
+		_recorded = host.startsWith(RECORDING_PREFIX);
+		_host = _recorded || host.indexOf(':') != -1 ? host : host + ":80";
+		_path = path;
+	}
+
+	//// CONFIGURATION ---------------------------------------------------------
+
+	/**
+	 * Sets the camera settings to write before the first connection, as
+	 * AxisCamera would.  Ignored for recordings.
+	 * @param maxFPS Frame rate.
+	 * @param resolution Resolution, such as "160x120".
+	 * @param compression JPEG compression (0-100).
+	 * @param exposurePriority 0 for image quality, 50 for none, 100 for frame rate.
+	 */
+	public synchronized void configureCamera( int maxFPS, String resolution, int compression, int exposurePriority ) {
+		_cameraParameters = "&Image.I0.Stream.FPS=" + maxFPS
+				+ "&Image.I0.Appearance.Resolution=" + resolution
+				+ "&Image.I0.Appearance.Compression=" + compression
+				+ "&ImageSource.I0.Sensor.ExposurePriority=" + exposurePriority;
+	}
+
+	/**
+	 * Writes any pending camera settings.  A failure is reported but does not
+	 * stop streaming with whatever settings the camera already has.
+	 */
+	private void writeCameraParameters() {
+		String parameters;
+		synchronized (this) {
+			parameters = _cameraParameters;
+			_cameraParameters = null;
+		}
+		if ( parameters == null || _recorded ) {
+			return;
+		}
+		StreamConnection connection = null;
+		try {
+			connection = (StreamConnection) Connector.open("socket://" + _host);
+			_in = connection.openInputStream();
+			_bufferPosition = 0;
+			_bufferLength = 0;
+			sendRequest(connection, PARAMETER_PATH + parameters);
+			String status = readLine();
+			if ( status.indexOf(" 200") == -1 ) {
+				System.err.println("MjpegStream :: camera settings not written: " + status);
+			}
+		}
+		catch (IOException e) {
+			System.err.println("MjpegStream :: camera settings not written: " + e);
+		}
+		finally {
+			close(connection);
+		}
+	}
+
+	//// CONSUMER --------------------------------------------------------------
+
+	/**
+	 * Tells whether a frame newer than the last one decoded is available and
+	 * not yet stale.
+	 */
+	public synchronized boolean hasFreshFrame() {
+		return _newest != -1 && _newestSequence != _decodedSequence
+				&& System.currentTimeMillis() - _times[_newest] < STALE_MILLIS;
+	}
+
+	/**
+	 * Decodes the newest frame, skipping any older undecoded ones.
+	 * @return A new image which the caller must free, or null if no frame is
+	 * newer than the last one decoded.
+	 * @throws NIVisionException If the frame could not be decoded.
+	 */
+	public ColorImage decodeNewest() throws NIVisionException {
+		int length;
+		synchronized (this) {
+			if ( _newest == -1 || _newestSequence == _decodedSequence ) {
+				return null;
+			}
+			length = _lengths[_newest];
+			_jpeg.setBytes(0, _frames[_newest], 0, length);
+			if ( _decodedSequence != 0 ) {
+				_framesSkipped += _newestSequence - _decodedSequence - 1;
+			}
+			_decodedSequence = _newestSequence;
+			_decodedFrameMillis = _times[_newest];
+		}
+
+		HSLImage image = new HSLImage();
+		try {
+			NIVision.readJpegString(image.image, _jpeg, length);
+		}
+		catch (NIVisionException e) {
+			image.free();
+			throw e;
+		}
+		return image;
+	}
+
+	/**
+	 * Returns the time at which the last decoded frame began to arrive.
+	 * @return Time in milliseconds (System.currentTimeMillis() base).
+	 */
+	public synchronized long getDecodedFrameMillis() {
+		return _decodedFrameMillis;
+	}
+
+	/** @return Frames received since the stream was created. */
+	public synchronized int getFramesRead() {
+		return _framesRead;
+	}
+
+	/** @return Frames replaced by a newer frame before being decoded. */
+	public synchronized int getFramesSkipped() {
+		return _framesSkipped;
+	}
+
+	/** @return Frames too large for the ring. */
+	public synchronized int getFramesDropped() {
+		return _framesDropped;
+	}
+
+	//// READER ----------------------------------------------------------------
+
+	public void run() {
+		// Frames are waiting in the ring; the control loop takes precedence
+		Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
+
+		while (true) {
+			StreamConnection connection = null;
+			try {
+				RobotCamera.awaitRequest();
+				writeCameraParameters();
+				if ( _recorded ) {
+					connection = (StreamConnection) Connector.open(_host);
+				} else {
+					connection = (StreamConnection) Connector.open("socket://" + _host);
+				}
+				_in = connection.openInputStream();
+				_bufferPosition = 0;
+				_bufferLength = 0;
+				if ( !_recorded ) {
+					sendRequest(connection, _path);
+				}
+
+				// Skip the HTTP response header
+				while (readLine().length() != 0) {
+				}
+				readFrames();
+			}
+			catch (Exception e) {
+				System.err.print(e);
+				try {
+					Thread.sleep(RETRY_MILLIS);
+				}
+				catch (InterruptedException ie) {
+				}
+			}
+			finally {
+				close(connection);
+			}
+		}
+	}
+
+	private void sendRequest( StreamConnection connection, String path ) throws IOException {
+		OutputStream out = connection.openOutputStream();
+		out.write(("GET " + path + " HTTP/1.0\r\n"
+				+ "Authorization: Basic " + AUTHORIZATION + "\r\n"
+				+ "\r\n").getBytes());
+		out.flush();
+	}
+
+	private void close( StreamConnection connection ) {
+		try {
+			if ( _in != null ) {
+				_in.close();
+				_in = null;
+			}
+			if ( connection != null ) {
+				connection.close();
+			}
+		}
+		catch (IOException e) {
+		}
+	}
+
+	/**
+	 * Reads multipart frames into the ring until nobody has wanted frames for
+	 * IDLE_MILLIS.  A recording is paced at REPLAY_FRAME_MILLIS.
+	 */
+	private void readFrames() throws IOException, InterruptedException {
+		long lastWanted = System.currentTimeMillis();
+		while (true) {
+			// Part headers; only the length matters
+			int length = -1;
+			String line;
+			do {
+				line = readLine();
+				if ( line.toLowerCase().startsWith("content-length:") ) {
+					length = Integer.parseInt(line.substring(15).trim());
+				}
+			} while (line.length() != 0 || length == -1);
+			long arrived = System.currentTimeMillis();
+
+			if ( length > MAX_FRAME_BYTES ) {
+				skip(length);
+				synchronized (this) {
+					_framesDropped++;
+				}
+				continue;
+			}
+
+			int slot = nextSlot();
+			readFully(_frames[slot], length);
+			synchronized (this) {
+				_lengths[slot] = length;
+				_times[slot] = arrived;
+				_newest = slot;
+				_newestSequence++;
+				_framesRead++;
+			}
+
+			if ( RobotCamera.isRequested() ) {
+				lastWanted = arrived;
+			} else if ( arrived - lastWanted > IDLE_MILLIS ) {
+				return;
+			}
+			if ( _recorded ) {
+				Thread.sleep(REPLAY_FRAME_MILLIS);
+			}
+		}
+	}
+
+	/**
+	 * Chooses the slot for the next frame: never the newest, which the
+	 * consumer may be copying.
+	 */
+	private synchronized int nextSlot() {
+		return (_newest + 1) % RING_SIZE;
+	}
+
+	//// BUFFERED INPUT --------------------------------------------------------
+
+	private int read() throws IOException {
+		if ( _bufferPosition == _bufferLength ) {
+			_bufferLength = _in.read(_buffer, 0, _buffer.length);
+			_bufferPosition = 0;
+			if ( _bufferLength <= 0 ) {
+				throw new IOException("MJPEG stream closed");
+			}
+		}
+		return _buffer[_bufferPosition++] & 0xFF;
+	}
+
+	/**
+	 * Reads an ASCII line, without its terminator.
+	 */
+	private String readLine() throws IOException {
+		_line.setLength(0);
+		int c;
+		while ((c = read()) != '\n') {
+			if ( c != '\r' ) {
+				_line.append((char) c);
+			}
+		}
+		return _line.toString();
+	}
+
+	private void readFully( byte[] dest, int length ) throws IOException {
+		int n = Math.min(length, _bufferLength - _bufferPosition);
+		System.arraycopy(_buffer, _bufferPosition, dest, 0, n);
+		_bufferPosition += n;
+		while (n < length) {
+			int r = _in.read(dest, n, length - n);
+			if ( r <= 0 ) {
+				throw new IOException("MJPEG stream closed");
+			}
+			n += r;
+		}
+	}
+
+	private void skip( int length ) throws IOException {
+		for ( int i = 0; i < length; i++ ) {
+			read();
+		}
+	}
+}
@@ -2,6 +2,8 @@ package robot.camera;
 
 import edu.wpi.first.wpilibj.camera.AxisCamera;
 import edu.wpi.first.wpilibj.image.*;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import robot.IO.DataIO;
 import robot.RobotObject;
 
 /**
@@ -28,21 +30,32 @@ public abstract class RobotCamera extends RobotObject {
 	
 	//// CONSTANTS -------------------------------------------------------------
 	
-	private static final double TARGET_WIDTH_INCHES = 62;
-	private static final double TARGET_HEIGHT_INCHES = 20;
-	private static final double TARGET_ELEVATION_INCHES_TO_BOTTOM = 100;
-	private static final double VIEW_ANGLE_DEGREES_HORIZONTAL = 50;
-	private static final double VIEW_ANGLE_PIXELS_HORIZONTAL = 320;
-	private static final double VIEW_ANGLE_DEGREES_VERTICAL = 38;//CHECK
-	private static final double VIEW_ANGLE_PIXELS_VERTICAL = 240;
-	private static final double VIEW_HEIGHT_OVER_WIDTH = 0.75;
-	private static final double CAMERA_ANGLE_CENTER_ELEVATION_DEGREES = 20;//CHECK
-	private static final double CAMERA_HEIGHT_INCHES = 12;//CHECK
+	/** Address of the camera on the robot's network. */
+	public static final String CAMERA_HOST = "10.2.45.11";
+	/** How long a call to requestFrames() keeps the camera running. */
+	public static final long REQUEST_LEASE_MILLIS = 250;
+	/** Most candidate targets kept per frame. */
+	public static final int MAX_TARGETS = 8;
+	/** Smallest bounding box accepted as a target. */
+	private static final int MIN_TARGET_WIDTH = 70;
+	private static final int MIN_TARGET_HEIGHT = 20;
+	/** Particles filling more of their bounding box than this are not hollow rectangles. */
+	private static final double MAX_FILL_RATIO = 0.8;
+	/** Particles filling less of their bounding box than this count as hollow. */
+	private static final double HOLLOW_FILL_RATIO = 0.55;
+	/** Expected fill ratio of the reflective tape outline. */
+	private static final double IDEAL_FILL_RATIO = 0.4;
+	/** Hue, saturation and value thresholds used before calibration. */
+	private static final int[] DEFAULT_THRESHOLDS = { 107, 133, 97, 256, 178, 256 };
+	/** Calibration names of the thresholds, in the order of thresholdRGB(). */
+	private static final String[] THRESHOLD_NAMES = {
+		"CAMERA_HUE_MIN", "CAMERA_HUE_MAX",
+		"CAMERA_SATURATION_MIN", "CAMERA_SATURATION_MAX",
+		"CAMERA_VALUE_MIN", "CAMERA_VALUE_MAX"
+	};
 	
 	//// PRIVATE VARIABLES -----------------------------------------------------
 	
-	private static boolean _firstImageCapture = true;
-	
 	private static boolean _alreadyInit = false;
 	/** The camera instance used in tracking. */
 	private static AxisCamera _camera;
@@ -54,13 +67,37 @@ public abstract class RobotCamera extends RobotObject {
 	private static double _recentDistanceInches = 0;
 	/** In DEGREES, direction (negative left?) toward target based on most recent exposure. */
 	private static double _recentThetaDegrees = 0; //Radians
+	/** The MJPEG reader, or null to capture with AxisCamera.getImage(). */
+	private static MjpegStream _stream = null;
 	/** The reference to the CameraThread object which calls work(). */
 	private static Thread _cameraThread = null;
 	/** Whether the current image is fresh; employed by TargetLogic. */
 	private static boolean _freshImage = false;
 	
-	/** Previous location of the image. */
-	private static double _previousLocation = 0;
+	/** Lock on which CameraThread waits while nobody wants frames. */
+	private static final Object _requestLock = new Object();
+	/** Time at which the most recent frame request lapses. */
+	private static long _requestExpiresMillis = 0;
+	
+	/** Candidates from the most recent frame, ranked by descending score; guarded by itself. */
+	private static final Target[] _targets = new Target[MAX_TARGETS];
+	/** Number of valid entries in _targets. */
+	private static int _targetCount = 0;
+	/** Area of the largest hollow particle in the most recent frame, candidate or not; guarded by _targets. */
+	private static double _largestHollowArea = 0;
+	/** Chooses the target to aim at from the candidates. */
+	private static TargetSelector _selector = TargetSelector.CENTERED;
+	/** Current hue, saturation and value thresholds; guarded by itself. */
+	private static final int[] _thresholds = new int[6];
+	/** Whether the next frame should be used to calibrate the thresholds. */
+	private static boolean _calibrateThresholds = false;
+	
+	static {
+		for (int i = 0; i < MAX_TARGETS; i++) {
+			_targets[i] = new Target(0, 0, 0, 0);
+		}
+		System.arraycopy(DEFAULT_THRESHOLDS, 0, _thresholds, 0, 6);
+	}
 
 	//// TARGET CLASS ----------------------------------------------------------
 	
@@ -73,13 +110,36 @@ public abstract class RobotCamera extends RobotObject {
 	static public class Target {
 
 		Target( int nx, int ny, int nw, int nh ) {
+			set(nx, ny, nw, nh, (double) nw * nh);
+		}
+		
+		Target( Target t ) {
+			copy(t);
+		}
+		
+		/**
+		 * Overwrites this target, so that preallocated targets can be reused.
+		 */
+		void set( int nx, int ny, int nw, int nh, double narea ) {
 			x = nx;
 			y = ny;
 			w = nw;
 			h = nh;
 			x2 = x + w;
 			y2 = y + h;
+			area = narea;
+			aspectRatio = h == 0 ? 0 : (double) w / h;
+			fillRatio = w * h == 0 ? 0 : area / (w * h);
+			centerMassX = x + w / 2.0;
+			score = 0;
 		}
+		
+		void copy( Target t ) {
+			set(t.x, t.y, t.w, t.h, t.area);
+			centerMassX = t.centerMassX;
+			score = t.score;
+		}
+		
 		/** The left edge's x position. */
 		public int x;
 		/** The top edge's y position. */
@@ -92,6 +152,16 @@ public abstract class RobotCamera extends RobotObject {
 		public int x2;
 		/** The bottom edge's y position. */
 		public int y2;
+		/** The number of pixels in the particle. */
+		public double area;
+		/** Width over height of the bounding box. */
+		public double aspectRatio;
+		/** The fraction of the bounding box covered by the particle. */
+		public double fillRatio;
+		/** The x position of the particle's center of mass. */
+		public double centerMassX;
+		/** How much this looks like a goal, from 0 to 100. */
+		public double score;
 	}
 	
 	//// INITIALIZATION --------------------------------------------------------
@@ -103,16 +173,49 @@ public abstract class RobotCamera extends RobotObject {
 		if (_alreadyInit){
 			return;
 		}
-		//how it will be on the robot ; 
-		_camera = AxisCamera.getInstance("10.2.45.11");  // get an instance ofthe camera
-		//_camera = AxisCamera.getInstance("192.168.0.90");
-		_camera.writeMaxFPS(20);
-		_camera.writeExposurePriority(AxisCamera.ExposurePriorityT.frameRate);
-		_camera.writeResolution(AxisCamera.ResolutionT.k160x120);
-		_camera.writeCompression(65);
+		CameraModel.init();
+		synchronized (_thresholds) {
+			for (int i = 0; i < 6; i++) {
+				_thresholds[i] = (int) DataIO.getCalibration(THRESHOLD_NAMES[i], DEFAULT_THRESHOLDS[i]);
+			}
+		}
+		if (SmartDashboard.getBoolean("Camera MJPEG", false)) {
+			// AxisCamera would fetch every frame again alongside the stream
+			useStream(SmartDashboard.getString("Camera MJPEG Host", CAMERA_HOST));
+		} else {
+			//how it will be on the robot ; 
+			_camera = AxisCamera.getInstance(CAMERA_HOST);  // get an instance ofthe camera
+			//_camera = AxisCamera.getInstance("192.168.0.90");
+			_camera.writeMaxFPS(20);
+			_camera.writeExposurePriority(AxisCamera.ExposurePriorityT.frameRate);
+			_camera.writeResolution(AxisCamera.ResolutionT.k160x120);
+			_camera.writeCompression(65);
+		}
+		// Off unless asked for, so matches never spend flash or CPU on it
+		if (SmartDashboard.getBoolean("Camera Debug Frames", false)) {
+			DebugFrameSink.start();
+		}
 		_alreadyInit = true;
 	}
 	
+	/**
+	 * Captures frames from the camera's MJPEG stream instead of through
+	 * AxisCamera, which is then not started.  The stream writes the camera
+	 * settings itself.  Called by init() when "Camera MJPEG" is set on the
+	 * SmartDashboard.
+	 * @param host The camera address; a desktop serving recorded MJPEG
+	 * ("address:port") or a recording on the cRIO ("file:///...") may stand
+	 * in for the camera.
+	 */
+	public static void useStream( String host ) {
+		if (_stream != null) {
+			return;
+		}
+		_stream = new MjpegStream(host, MjpegStream.DEFAULT_PATH);
+		_stream.configureCamera(20, "160x120", 65, 100);
+		new Thread(_stream).start();
+	}
+	
 	//// UPDATE ----------------------------------------------------------------
 
 	/**
@@ -125,25 +228,113 @@ public abstract class RobotCamera extends RobotObject {
 		}
 	}
 	
+	//// FRAME REQUESTS --------------------------------------------------------
+	
+	/**
+	 * Asks for camera frames to be processed.  Consumers should call this every
+	 * loop while they need targeting data; CameraThread goes idle once
+	 * REQUEST_LEASE_MILLIS pass without a request.
+	 */
+	public static void requestFrames() {
+		synchronized (_requestLock) {
+			boolean idle = !isRequested();
+			_requestExpiresMillis = System.currentTimeMillis() + REQUEST_LEASE_MILLIS;
+			if (idle) {
+				_requestLock.notifyAll();
+			}
+		}
+	}
+	
+	/**
+	 * Tells whether any consumer currently wants frames.
+	 * @return TRUE if a request is active.
+	 */
+	public static boolean isRequested() {
+		synchronized (_requestLock) {
+			return System.currentTimeMillis() < _requestExpiresMillis;
+		}
+	}
+	
+	/**
+	 * Blocks the calling thread until frames are requested.  Called by
+	 * CameraThread only.
+	 * @return TRUE if the thread had to wait (the camera was idle).
+	 * @throws InterruptedException 
+	 */
+	static boolean awaitRequest() throws InterruptedException {
+		synchronized (_requestLock) {
+			boolean waited = false;
+			while (!isRequested()) {
+				waited = true;
+				_requestLock.wait();
+			}
+			return waited;
+		}
+	}
+	
+	/**
+	 * Tells whether the camera has delivered an image since the last work().
+	 * Called by CameraThread only.
+	 */
+	static boolean hasFreshImage() {
+		if (_stream != null) {
+			return _stream.hasFreshFrame();
+		}
+		return _camera != null && _camera.freshImage();
+	}
+	
+	/**
+	 * Reports the period of the main loop so CameraThread can back off while
+	 * the loop is overrunning.
+	 * @param periodMillis Milliseconds between the last two loop iterations.
+	 */
+	public static void reportLoopPeriod(long periodMillis) {
+		CameraThread.reportLoopPeriod(periodMillis);
+	}
+	
+	//// WORK ------------------------------------------------------------------
+	
 	/**
 	 * Performs "work" on the image, excluding "greenbox." Called by CameraThread only.
 	 * 1. Grabs source image and saves it.
 	 * 2. Calls greenbox.
 	 * 3. Free all objects
 	 * 4. Calculates distance / angle.
+	 * Each step is timed and reported to CameraStats.
 	 */
 	public static void work() {
-		_previousLocation = getTargetLocationUnits();
 		_srcImage = null;
 		try {
-			_srcImage = _camera.getImage();
+			long captureStart = System.currentTimeMillis();
+			if (_stream != null) {
+				_srcImage = _stream.decodeNewest();
+				if (_srcImage == null) {
+					throw new NIVisionException("No new frame");
+				}
+				// Latency counts from when the frame arrived, not when it was decoded
+				captureStart = _stream.getDecodedFrameMillis();
+			} else {
+				_srcImage = _camera.getImage();
+			}
+			long imageReceived = System.currentTimeMillis();
 			//_srcImage.write("/raw.png");
+			if (_calibrateThresholds) {
+				_calibrateThresholds = false;
+				calibrateThresholds();
+				return;
+			}
 			greenBox();
 			calculateDistance();
 			calculateAngle();
+			TargetTracker.update(_greenTarget, _recentDistanceInches, _recentThetaDegrees, captureStart);
+			CameraStats.recordFrame(captureStart, imageReceived, System.currentTimeMillis());
 			_freshImage = true;
+			offerDebugFrame(TargetTracker.wasLastFrameAccepted() ? null : "outlier");
 		}
 		catch (Exception e) {
+			TargetTracker.recordMiss();
+			CameraStats.recordFailure();
+			offerDebugFrame("no target");
 		}
 		
 		finally {
@@ -155,8 +346,62 @@ public abstract class RobotCamera extends RobotObject {
 		}
 	}
 	
+	/**
+	 * Asks CameraThread to calibrate the thresholds from the next frame.  The
+	 * robot should be aimed at the target; the last target found is used as
+	 * the region, or the middle of the image if there is none.
+	 */
+	public static void requestThresholdCalibration() {
+		_calibrateThresholds = true;
+		requestFrames();
+	}
+	
+	/**
+	 * Calibrates the thresholds from the current image and stores them in the
+	 * calibration file.
+	 */
+	private static void calibrateThresholds() throws NIVisionException {
+		Target region = _greenTarget;
+		if (region == null || TargetTracker.getConfidence() <= 0) {
+			int w = (int) CameraModel.IMAGE_WIDTH_PIXELS;
+			int h = (int) CameraModel.IMAGE_HEIGHT_PIXELS;
+			region = new Target(w / 4, h / 4, w / 2, h / 2);
+		}
+		toHSVPlanes(_srcImage);
+		int[] thresholds = ThresholdCalibrator.calibrate(_srcImage, region);
+		if (thresholds == null) {
+			return;
+		}
+		synchronized (_thresholds) {
+			System.arraycopy(thresholds, 0, _thresholds, 0, 6);
+		}
+		for (int i = 0; i < 6; i++) {
+			DataIO.setCalibration(THRESHOLD_NAMES[i], thresholds[i]);
+		}
+		DataIO.saveCalibrations();
+	}
+	
+	/**
+	 * Hands the current image to DebugFrameSink if it wants it; the sink then
+	 * frees the image instead of work().
+	 * @param reason Why the frame is interesting, or null for a routine frame.
+	 */
+	private static void offerDebugFrame( String reason ) {
+		if (DebugFrameSink.offer(_srcImage, reason)) {
+			_srcImage = null;
+		}
+	}
+	
 	//// GETTER METHODS --------------------------------------------------------
 
+	/**
+	 * Returns the target chosen in the most recent available exposure.
+	 * @return The target, or null if none has been seen.
+	 */
+	public static Target getTarget() {
+		return _greenTarget;
+	}
+
 	/**
 	 * Returns the distance in inches to the target according to the most recent available exposure.
 	 */
@@ -186,68 +431,182 @@ public abstract class RobotCamera extends RobotObject {
 	//// IMAGE PROCESSING ------------------------------------------------------
 
 	/**
-	 * Internal image-processing which isolates the green board.
+	 * Internal image-processing which isolates the green board in the current
+	 * image.
+	 * @throws NIVisionException If processing fails or no target is visible;
+	 * the previous target is kept in that case.
 	 */
-	private static void greenBox() {
-		MonoImage saturationHSVOriginal = null;
-		MonoImage hueHSVOriginal = null;
-		MonoImage valueOriginal = null;
+	private static void greenBox() throws NIVisionException {
+		Target found = findTarget(_srcImage);
+		if (found == null) {
+			throw new NIVisionException("No target found");
+		}
+		_greenTarget = found;
+	}
+
+	/**
+	 * Isolates the green boards in an image, ranks them into the candidate
+	 * array and chooses one with the current TargetSelector.  The image's
+	 * planes are replaced by its hue, saturation and value planes.  Also used
+	 * by VisionRegression to replay recorded frames.
+	 * @param image The image to search; not freed.
+	 * @return A copy of the chosen target, or null if none was found.
+	 * @throws NIVisionException 
+	 */
+	static Target findTarget( ColorImage image ) throws NIVisionException {
 		BinaryImage thresholdImage = null;
 
 		BinaryImage result = null;
 		try {
-			saturationHSVOriginal = _srcImage.getHSVSaturationPlane();
-			valueOriginal = _srcImage.getValuePlane();
-			hueHSVOriginal = _srcImage.getHSVHuePlane();
-
-			_srcImage.replaceRedPlane(hueHSVOriginal);
-			_srcImage.replaceGreenPlane(saturationHSVOriginal);
-			_srcImage.replaceBluePlane(valueOriginal);
-			if (_firstImageCapture)
-			{
-				_srcImage.write("/Swapped.png");
+			toHSVPlanes(image);
+			synchronized (_thresholds) {
+				thresholdImage = image.thresholdRGB(_thresholds[0], _thresholds[1], _thresholds[2], _thresholds[3], _thresholds[4], _thresholds[5]);
 			}
-			_firstImageCapture = false;
-			thresholdImage = _srcImage.thresholdRGB(107, 133, 97, 256, 178, 256);
 			
 			result = thresholdImage.removeSmallObjects(true,1);
 
 			ParticleAnalysisReport[] greens = result.getOrderedParticleAnalysisReports();
-			ParticleAnalysisReport board = null;
-			for (int i = 0; i < greens.length; i++) {
-				if ( (board == null || board.particleArea < greens[i].particleArea) && greens[i].particleArea < greens[i].boundingRectWidth * greens[i].boundingRectHeight * 0.55 ) {
-					board = greens[i];
+			synchronized (_targets) {
+				_targetCount = 0;
+				_largestHollowArea = 0;
+				for (int i = 0; i < greens.length; i++) {
+					ParticleAnalysisReport p = greens[i];
+					if ( p.particleArea < p.boundingRectWidth * p.boundingRectHeight * HOLLOW_FILL_RATIO ) {
+						_largestHollowArea = Math.max(_largestHollowArea, p.particleArea);
+					}
+					if ( p.boundingRectWidth > MIN_TARGET_WIDTH && p.boundingRectHeight > MIN_TARGET_HEIGHT && p.particleArea < p.boundingRectWidth * p.boundingRectHeight * MAX_FILL_RATIO ) {
+						rank(p);
+					}
 				}
-			}
-			double largestsize = board.particleArea;
-			ParticleAnalysisReport q = null;
-			for (int i = 0; i < greens.length; i++) {
-				/*if (greens[i].particleArea> largestsize * 0.5){
-					println("Candidate: " + greens[i].boundingRectLeft + "," + greens[i].boundingRectTop);
-				}*/
-				if ( (greens[i].particleArea > largestsize * 0.5 && greens[i].boundingRectWidth > 70 && greens[i].boundingRectHeight > 20 && greens[i].particleArea < greens[i].boundingRectWidth * greens[i].boundingRectHeight * 0.8) && (q == null || Math.abs(q.center_mass_x - 77.0 ) > Math.abs(greens[i].center_mass_x - 77.0)) ) {
-					q = greens[i];
+				//println("Targets: " + _targetCount);
+				int chosen = _selector.select(_targets, _targetCount);
+				if (chosen < 0) {
+					return null;
 				}
+				return new Target(_targets[chosen]);
 			}
-			board = q;
-			_greenTarget = new Target(board.boundingRectLeft, board.boundingRectTop, board.boundingRectWidth, board.boundingRectHeight);
-			//println("Target location:" + _greenTarget.x + " ," + _greenTarget.y + " |w,h,a " + _greenTarget.w + "|" + _greenTarget.h + " ," + board.particleArea);
 		}
-		catch (NIVisionException e) {
+		finally {
+			try {
+				free(thresholdImage);
+				free(result);
+			}
+			catch (NIVisionException e) {
+			}
+		}
+	}
+	
+	/**
+	 * Replaces an image's red, green and blue planes with its hue, saturation
+	 * and value planes, so thresholdRGB() thresholds in HSV.
+	 * @param image The image to convert.
+	 * @throws NIVisionException 
+	 */
+	static void toHSVPlanes( ColorImage image ) throws NIVisionException {
+		MonoImage saturationHSVOriginal = null;
+		MonoImage hueHSVOriginal = null;
+		MonoImage valueOriginal = null;
+		try {
+			saturationHSVOriginal = image.getHSVSaturationPlane();
+			valueOriginal = image.getValuePlane();
+			hueHSVOriginal = image.getHSVHuePlane();
+
+			image.replaceRedPlane(hueHSVOriginal);
+			image.replaceGreenPlane(saturationHSVOriginal);
+			image.replaceBluePlane(valueOriginal);
 		}
 		finally {
 			try {
 				free(valueOriginal);
 				free(saturationHSVOriginal);
 				free(hueHSVOriginal);
-				free(thresholdImage);
-				free(result);
 			}
 			catch (NIVisionException e) {
 			}
 		}
 	}
 
+	/**
+	 * Scores a particle and inserts it into the candidate array, keeping the
+	 * array sorted by descending score.  When the array is full the lowest
+	 * scoring candidate is dropped.  Callers must hold the _targets lock.
+	 */
+	private static void rank( ParticleAnalysisReport p ) {
+		double aspect = (double) p.boundingRectWidth / p.boundingRectHeight;
+		double fill = p.particleArea / (p.boundingRectWidth * p.boundingRectHeight);
+		double aspectScore = Math.max(0, 1 - Math.abs(aspect / (CameraModel.TARGET_WIDTH_INCHES / CameraModel.TARGET_HEIGHT_INCHES) - 1));
+		double fillScore = Math.max(0, 1 - Math.abs(fill - IDEAL_FILL_RATIO) / IDEAL_FILL_RATIO);
+		double score = 50 * aspectScore + 50 * fillScore;
+
+		int i = _targetCount;
+		if (i == MAX_TARGETS) {
+			if (score <= _targets[MAX_TARGETS - 1].score) {
+				return;
+			}
+			i--;
+		} else {
+			_targetCount++;
+		}
+		// Shift lower scores down, reusing the displaced Target object
+		Target slot = _targets[i];
+		while (i > 0 && _targets[i - 1].score < score) {
+			_targets[i] = _targets[i - 1];
+			i--;
+		}
+		_targets[i] = slot;
+		slot.set(p.boundingRectLeft, p.boundingRectTop, p.boundingRectWidth, p.boundingRectHeight, p.particleArea);
+		slot.centerMassX = p.center_mass_x;
+		slot.score = score;
+	}
+	
+	/**
+	 * Returns the area of the largest hollow particle (filling less than
+	 * HOLLOW_FILL_RATIO of its bounding box) in the frame being searched,
+	 * whether or not it is a candidate.  Valid while a TargetSelector runs.
+	 * @return Pixels, or 0 if there was none.
+	 */
+	static double getLargestHollowArea() {
+		synchronized (_targets) {
+			return _largestHollowArea;
+		}
+	}
+	
+	/**
+	 * Sets the policy used to choose among visible targets.
+	 * @param selector The new policy, e.g. TargetSelector.HIGHEST.
+	 */
+	public static void setTargetSelector( TargetSelector selector ) {
+		_selector = selector;
+	}
+	
+	/**
+	 * Copies the candidate targets from the most recent frame, best first.
+	 * @param dest Array to fill; extra candidates are left out.
+	 * @return Number of targets copied.
+	 */
+	public static int getTargets( Target[] dest ) {
+		synchronized (_targets) {
+			int n = Math.min(dest.length, _targetCount);
+			for (int i = 0; i < n; i++) {
+				if (dest[i] == null) {
+					dest[i] = new Target(_targets[i]);
+				} else {
+					dest[i].copy(_targets[i]);
+				}
+			}
+			return n;
+		}
+	}
+	
+	/**
+	 * Returns the number of plausible targets in the most recent frame.
+	 */
+	public static int getTargetCount() {
+		synchronized (_targets) {
+			return _targetCount;
+		}
+	}
+
 	/**
 	 * Tells whether the current is fresh
 	 * @return Freshness of image (true for "is fresh")
@@ -261,14 +620,16 @@ public abstract class RobotCamera extends RobotObject {
 	 */
 	public static void imageUnfresh() {
 		_freshImage = false;
+		CameraStats.recordConsumed(System.currentTimeMillis());
 	}
 	
 	/**
-	 * Identifies whether the camera's target location is subject to change; ie when the robot moves and camera lags behind.
-	 * @return Truth value of above proposition.
+	 * Identifies whether the filtered target is steady enough to act on.
+	 * @return TRUE if TargetTracker is confident in its estimate.
+	 * @see TargetTracker#isReady()
 	 */
 	public static boolean isCameraReady() {
-		return Math.abs(getTargetLocationUnits() - _previousLocation) < 5;
+		return TargetTracker.isReady();
 	}
 
 	//// CALCULATIONS ----------------------------------------------------------
@@ -276,23 +637,15 @@ public abstract class RobotCamera extends RobotObject {
 	// TODO:  Camera Javadoc (NATHAN)
 	public static void calculateAngle()
 	{
-		_recentThetaDegrees = (double) (_greenTarget.x + _greenTarget.w / 2 - VIEW_ANGLE_PIXELS_HORIZONTAL / 2.0) * (VIEW_ANGLE_DEGREES_HORIZONTAL) / (VIEW_ANGLE_PIXELS_HORIZONTAL);
+		_recentThetaDegrees = CameraModel.angleDegrees(_greenTarget);
 	}
 	
 	// TODO:  Camera Javadoc (NATHAN)
 	public static void calculateDistance()
 	{
-		_recentDistanceInches = 14874.0 * VIEW_ANGLE_PIXELS_HORIZONTAL / 320.0 / ((_greenTarget.w + _greenTarget.h) / 2.0);
+		_recentDistanceInches = CameraModel.distanceInches(_greenTarget);
 	}
 	
-	// TODO:  Camera Javadoc (NATHAN)
-	public static void calculateDistanceAlternate()
-	{
-		double m = (_greenTarget.w + _greenTarget.h / 2) / VIEW_ANGLE_PIXELS_VERTICAL * VIEW_ANGLE_DEGREES_VERTICAL;
-		double a = CAMERA_ANGLE_CENTER_ELEVATION_DEGREES + VIEW_ANGLE_DEGREES_VERTICAL / 2;
-		double h = TARGET_HEIGHT_INCHES / 2 + TARGET_ELEVATION_INCHES_TO_BOTTOM;
-		_recentDistanceInches = h / Math.tan(Math.PI / 180 * (a-m));
-	}
 	
 	//// FREE METHODS ----------------------------------------------------------
 
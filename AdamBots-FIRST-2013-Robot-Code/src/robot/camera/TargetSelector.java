@@ -0,0 +1,109 @@
+package robot.camera;
+
+/**
+ * Chooses which of the visible targets RobotCamera should aim at.  The
+ * candidates are passed ranked by score (best first); a selector may use the
+ * ranking or ignore it.  Install one with RobotCamera.setTargetSelector().
+ * @author Adambots 245
+ */
+public abstract class TargetSelector {
+	//// CONSTANTS -------------------------------------------------------------
+
+	/** Column at which the shooter is aimed (the camera is mounted off-center). */
+	public static final double AIM_COLUMN = 77.0;
+	/** CENTERED and TRACKED ignore targets smaller than this fraction of the largest hollow particle. */
+	public static final double MIN_AREA_FRACTION = 0.5;
+
+	//// SELECTION -------------------------------------------------------------
+
+	/**
+	 * Chooses a target.
+	 * @param targets Candidates, ranked by descending score.
+	 * @param count Number of valid entries in targets.
+	 * @return Index of the chosen target, or -1 for none.
+	 */
+	public abstract int select( RobotCamera.Target[] targets, int count );
+
+	//// SELECTORS -------------------------------------------------------------
+
+	/**
+	 * The original greenBox() policy: of the targets at least
+	 * MIN_AREA_FRACTION of the largest hollow particle's area, the one whose
+	 * center of mass is nearest the aim column.  None if the frame has no
+	 * hollow particle.
+	 */
+	public static final TargetSelector CENTERED = new TargetSelector() {
+		public int select( RobotCamera.Target[] targets, int count ) {
+			return closestTo(targets, count, AIM_COLUMN);
+		}
+	};
+
+	/** The target with the largest area (usually the closest goal). */
+	public static final TargetSelector LARGEST = new TargetSelector() {
+		public int select( RobotCamera.Target[] targets, int count ) {
+			int best = -1;
+			for ( int i = 0; i < count; i++ ) {
+				if ( best == -1 || targets[i].area > targets[best].area ) {
+					best = i;
+				}
+			}
+			return best;
+		}
+	};
+
+	/** The target highest in the image (the top goal). */
+	public static final TargetSelector HIGHEST = new TargetSelector() {
+		public int select( RobotCamera.Target[] targets, int count ) {
+			int best = -1;
+			for ( int i = 0; i < count; i++ ) {
+				if ( best == -1 || targets[i].y < targets[best].y ) {
+					best = i;
+				}
+			}
+			return best;
+		}
+	};
+
+	/**
+	 * The target nearest where TargetTracker expects the current one to be, so
+	 * that aiming does not hop between goals; CENTERED until something has
+	 * been tracked.  The same greenBox() rules apply as for CENTERED, so a
+	 * small reflection near the prediction is not followed.
+	 */
+	public static final TargetSelector TRACKED = new TargetSelector() {
+		public int select( RobotCamera.Target[] targets, int count ) {
+			if ( TargetTracker.getConfidence() <= 0 ) {
+				return CENTERED.select(targets, count);
+			}
+			return closestTo(targets, count, TargetTracker.getPredictedCenterX());
+		}
+	};
+
+	//// HELPERS ---------------------------------------------------------------
+
+	/**
+	 * Finds the target whose center of mass is closest to a column, of those
+	 * at least MIN_AREA_FRACTION of the largest hollow particle's area.
+	 * @return Index of the target, or -1 if there is none (including when
+	 * the frame has no hollow particle).
+	 */
+	protected static int closestTo( RobotCamera.Target[] targets, int count, double column ) {
+		double minArea = RobotCamera.getLargestHollowArea() * MIN_AREA_FRACTION;
+		if ( minArea <= 0 ) {
+			return -1;
+		}
+		int best = -1;
+		double bestError = 0;
+		for ( int i = 0; i < count; i++ ) {
+			if ( targets[i].area <= minArea ) {
+				continue;
+			}
+			double error = Math.abs(targets[i].centerMassX - column);
+			if ( best == -1 || error < bestError ) {
+				best = i;
+				bestError = error;
+			}
+		}
+		return best;
+	}
+}
@@ -0,0 +1,206 @@
+package robot.camera;
+
+import robot.RobotObject;
+import utils.AlphaBetaFilter;
+
+/**
+ * Filters the vision target across frames.  Each quantity (center, size,
+ * distance and angle) has its own alpha-beta filter; a frame in which any of
+ * them falls outside its filter's gate is rejected as an outlier, unless
+ * several frames in a row disagree, in which case the target is assumed to
+ * have really moved and the filters restart.
+ *
+ * RobotCamera feeds this class from the CameraThread; the getters are safe to
+ * call from the main loop.
+ * @author Adambots 245
+ */
+public abstract class TargetTracker extends RobotObject {
+	//// PRINT FILTERING -------------------------------------------------------
+
+	/** Hide RobotObject field to allow for proper print filtering. */
+	public static boolean verboseOutput = true;
+
+	//// CONSTANTS -------------------------------------------------------------
+
+	public static double ALPHA = 0.5;
+	public static double BETA = 0.1;
+	/** Innovations beyond this many standard deviations are outliers. */
+	public static double GATE_SIGMAS = 4.0;
+	/** Consecutive outliers after which the filters restart. */
+	public static int MAX_CONSECUTIVE_OUTLIERS = 3;
+	/** Results older than this have no confidence. */
+	public static long STALE_MILLIS = 500;
+	/** Confidence required by isReady(). */
+	public static double READY_CONFIDENCE = 0.6;
+	/** Weight of the newest frame in the running acceptance ratio. */
+	public static double ACCEPTANCE_WEIGHT = 0.3;
+	/** Location reported before any target is seen (as RobotCamera does). */
+	public static final double DEFAULT_LOCATION_UNITS = 150;
+
+	//// BEARING ---------------------------------------------------------------
+
+	/**
+	 * A filtered direction to the target together with the capture time of
+	 * the frame it was estimated from; see getLastBearing().
+	 */
+	public static class Bearing {
+		public double angleDegrees;
+		public long captureMillis;
+	}
+
+	//// PRIVATE VARIABLES -----------------------------------------------------
+
+	private static final AlphaBetaFilter _centerX = new AlphaBetaFilter(ALPHA, BETA, GATE_SIGMAS, 6);
+	private static final AlphaBetaFilter _centerY = new AlphaBetaFilter(ALPHA, BETA, GATE_SIGMAS, 6);
+	private static final AlphaBetaFilter _size = new AlphaBetaFilter(ALPHA, BETA, GATE_SIGMAS, 6);
+	private static final AlphaBetaFilter _distance = new AlphaBetaFilter(ALPHA, BETA, GATE_SIGMAS, 24);
+	private static final AlphaBetaFilter _angle = new AlphaBetaFilter(ALPHA, BETA, GATE_SIGMAS, 3);
+
+	/** Running ratio of accepted frames to all frames (0-1). */
+	private static double _acceptance = 0;
+	private static int _consecutiveOutliers = 0;
+	private static boolean _lastAccepted = false;
+	private static int _outlierCount = 0;
+
+	//// UPDATE ----------------------------------------------------------------
+
+	/**
+	 * Incorporates a new detection.  Called by RobotCamera.work().
+	 * @param target The detected target.
+	 * @param distanceInches Distance calculated from the target.
+	 * @param angleDegrees Direction calculated from the target.
+	 * @param captureMillis Time at which the image was captured.
+	 */
+	public static synchronized void update( RobotCamera.Target target, double distanceInches, double angleDegrees, long captureMillis ) {
+		double cx = target.x + target.w / 2.0;
+		double cy = target.y + target.h / 2.0;
+		double size = (target.w + target.h) / 2.0;
+
+		// Every filter is gated, so all of them are updated or reset together
+		// and none can be left stale by rejecting its own samples
+		boolean outlier = _centerX.isOutlier(cx, captureMillis)
+				|| _centerY.isOutlier(cy, captureMillis)
+				|| _size.isOutlier(size, captureMillis)
+				|| _distance.isOutlier(distanceInches, captureMillis)
+				|| _angle.isOutlier(angleDegrees, captureMillis);
+
+		if ( outlier && _consecutiveOutliers < MAX_CONSECUTIVE_OUTLIERS ) {
+			_consecutiveOutliers++;
+			_outlierCount++;
+			_lastAccepted = false;
+			_acceptance += ACCEPTANCE_WEIGHT * (0 - _acceptance);
+			return;
+		}
+
+		if ( outlier ) {
+			// The "outliers" agree with each other; the target really moved
+			_centerX.reset(cx, captureMillis);
+			_centerY.reset(cy, captureMillis);
+			_size.reset(size, captureMillis);
+			_distance.reset(distanceInches, captureMillis);
+			_angle.reset(angleDegrees, captureMillis);
+		} else {
+			_centerX.update(cx, captureMillis);
+			_centerY.update(cy, captureMillis);
+			_size.update(size, captureMillis);
+			_distance.update(distanceInches, captureMillis);
+			_angle.update(angleDegrees, captureMillis);
+		}
+		_consecutiveOutliers = 0;
+		_lastAccepted = true;
+		_acceptance += ACCEPTANCE_WEIGHT * (1 - _acceptance);
+	}
+
+	/**
+	 * Records a frame in which no target was found.  Called by RobotCamera.work().
+	 */
+	public static synchronized void recordMiss() {
+		_lastAccepted = false;
+		_acceptance += ACCEPTANCE_WEIGHT * (0 - _acceptance);
+	}
+
+	//// GETTER METHODS --------------------------------------------------------
+
+	/**
+	 * Confidence in the current estimate: the running ratio of accepted
+	 * frames, reduced linearly as the last accepted frame ages.
+	 * @return Confidence from 0 (none) to 1.
+	 */
+	public static synchronized double getConfidence() {
+		if ( !_distance.isInitialized() ) {
+			return 0;
+		}
+		long age = System.currentTimeMillis() - _distance.getTimeMillis();
+		double freshness = Math.max(0, 1.0 - (double) age / STALE_MILLIS);
+		return _acceptance * freshness;
+	}
+
+	/**
+	 * Tells whether the estimate is steady enough to act on.
+	 * @return TRUE if the confidence is at least READY_CONFIDENCE.
+	 */
+	public static boolean isReady() {
+		return getConfidence() >= READY_CONFIDENCE;
+	}
+
+	/**
+	 * Tells whether the most recent frame was accepted by the filters.
+	 * @return FALSE if the last frame was an outlier or contained no target.
+	 */
+	public static synchronized boolean wasLastFrameAccepted() {
+		return _lastAccepted;
+	}
+
+	/**
+	 * Copies the filtered direction and its capture time, as of the most
+	 * recent frame, in one step so that a frame arriving meanwhile cannot
+	 * pair one frame's angle with another's time.
+	 * @param bearing Receives the direction and capture time.
+	 * @return FALSE, leaving bearing unchanged, if the most recent frame was
+	 * not accepted.
+	 */
+	public static synchronized boolean getLastBearing( Bearing bearing ) {
+		if ( !_lastAccepted ) {
+			return false;
+		}
+		bearing.angleDegrees = _angle.getValue();
+		bearing.captureMillis = _angle.getTimeMillis();
+		return true;
+	}
+
+	/** @return Number of frames rejected as outliers. */
+	public static synchronized int getOutlierCount() {
+		return _outlierCount;
+	}
+
+	/**
+	 * Predicted vertical target location (as RobotCamera.getTargetLocationUnits())
+	 * at the current time.
+	 */
+	public static synchronized double getPredictedLocationUnits() {
+		if ( !_centerY.isInitialized() ) {
+			return DEFAULT_LOCATION_UNITS;
+		}
+		return _centerY.predict(System.currentTimeMillis());
+	}
+
+	/** Predicted horizontal target center, in pixels, at the current time. */
+	public static synchronized double getPredictedCenterX() {
+		return _centerX.predict(System.currentTimeMillis());
+	}
+
+	/** Predicted average of target width and height, in pixels, at the current time. */
+	public static synchronized double getPredictedSize() {
+		return _size.predict(System.currentTimeMillis());
+	}
+
+	/** Predicted distance to the target, in inches, at the current time. */
+	public static synchronized double getPredictedDistanceInches() {
+		return _distance.predict(System.currentTimeMillis());
+	}
+
+	/** Predicted direction to the target, in degrees, at the current time. */
+	public static synchronized double getPredictedAngleDegrees() {
+		return _angle.predict(System.currentTimeMillis());
+	}
+}
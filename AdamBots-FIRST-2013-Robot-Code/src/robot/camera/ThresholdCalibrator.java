@@ -0,0 +1,161 @@
+package robot.camera;
+
+import edu.wpi.first.wpilibj.image.BinaryImage;
+import edu.wpi.first.wpilibj.image.ColorImage;
+import edu.wpi.first.wpilibj.image.NIVisionException;
+import edu.wpi.first.wpilibj.image.ParticleAnalysisReport;
+import robot.RobotObject;
+
+/**
+ * Chooses hue, saturation and value thresholds for the target from an image
+ * taken while the robot is aimed at it.  For each plane a histogram is built
+ * separately for pixels inside the target region and pixels outside it.  The
+ * peak is the bin whose pixels are most concentrated in the region relative
+ * to the rest of the image, and the thresholds cover the bins around it which
+ * are both common in the region and much more common there than elsewhere.
+ *
+ * The Java NIVision wrappers have no histogram function, so each bin is
+ * counted by thresholding the image to that bin and adding up the areas of
+ * the resulting particles.  A particle's area is shared between the region
+ * and the rest of the image in proportion to how much of its bounding
+ * rectangle lies in the region, so a particle crossing the region's edge is
+ * split rather than assigned wholly to one side.  This takes a few seconds
+ * and is meant for test mode only.
+ * @author Adambots 245
+ */
+public abstract class ThresholdCalibrator extends RobotObject {
+	//// PRINT FILTERING -------------------------------------------------------
+
+	/** Hide RobotObject field to allow for proper print filtering. */
+	public static boolean verboseOutput = true;
+
+	//// CONSTANTS -------------------------------------------------------------
+
+	public static final int BINS = 16;
+	public static final int BIN_WIDTH = 256 / BINS;
+	/** Bins less than this fraction of the region's peak are excluded. */
+	public static final double PEAK_FRACTION = 0.15;
+	/** Bins must be this many times denser in the region than outside it. */
+	public static final double MIN_LIFT = 3.0;
+	/** Fewest region pixels in a bin for it to be chosen as the peak. */
+	public static final int MIN_PEAK_PIXELS = 20;
+	/** Extra margin added to each side of the chosen range. */
+	public static final int MARGIN = BIN_WIDTH / 2;
+
+	//// PRIVATE VARIABLES -----------------------------------------------------
+
+	private static final double[] _inside = new double[BINS];
+	private static final double[] _outside = new double[BINS];
+
+	//// CALIBRATION -----------------------------------------------------------
+
+	/**
+	 * Picks thresholds from an image.
+	 * @param hsvImage An image whose red, green and blue planes have been
+	 * replaced by hue, saturation and value (see RobotCamera.toHSVPlanes()).
+	 * @param region Bounding box of the target in the image.
+	 * @return Thresholds in the order of ColorImage.thresholdRGB(), or null if
+	 * the region does not stand out in some plane.
+	 * @throws NIVisionException
+	 */
+	public static int[] calibrate( ColorImage hsvImage, RobotCamera.Target region ) throws NIVisionException {
+		int width = hsvImage.getWidth();
+		int height = hsvImage.getHeight();
+		int left = Math.max(0, region.x);
+		int top = Math.max(0, region.y);
+		int right = Math.min(width, region.x2);
+		int bottom = Math.min(height, region.y2);
+		double regionArea = (double) (right - left) * (bottom - top);
+		double outsideArea = (double) width * height - regionArea;
+		if ( right <= left || bottom <= top || outsideArea <= 0 ) {
+			return null;
+		}
+
+		int[] thresholds = new int[6];
+		for ( int plane = 0; plane < 3; plane++ ) {
+			for ( int bin = 0; bin < BINS; bin++ ) {
+				count(hsvImage, left, top, right, bottom, plane, bin);
+			}
+
+			int peak = -1;
+			double peakLift = 0;
+			for ( int bin = 0; bin < BINS; bin++ ) {
+				double lift = lift(bin, regionArea, outsideArea);
+				if ( _inside[bin] >= MIN_PEAK_PIXELS && lift > peakLift ) {
+					peak = bin;
+					peakLift = lift;
+				}
+			}
+			if ( peak < 0 || peakLift <= MIN_LIFT ) {
+				println("ThresholdCalibrator :: target does not stand out in plane " + plane);
+				return null;
+			}
+
+			int low = peak;
+			while ( low > 0 && belongs(low - 1, peak, regionArea, outsideArea) ) {
+				low--;
+			}
+			int high = peak;
+			while ( high < BINS - 1 && belongs(high + 1, peak, regionArea, outsideArea) ) {
+				high++;
+			}
+			thresholds[2 * plane] = Math.max(0, low * BIN_WIDTH - MARGIN);
+			thresholds[2 * plane + 1] = Math.min(256, (high + 1) * BIN_WIDTH + MARGIN);
+			println("ThresholdCalibrator :: plane " + plane + " " + thresholds[2 * plane] + "-" + thresholds[2 * plane + 1]);
+		}
+		return thresholds;
+	}
+
+	/**
+	 * Returns how many times denser a bin is in the region than outside it.
+	 * A bin absent outside the region counts as having one pixel there.
+	 */
+	private static double lift( int bin, double regionArea, double outsideArea ) {
+		double insideDensity = _inside[bin] / regionArea;
+		double outsideDensity = Math.max(_outside[bin], 1) / outsideArea;
+		return insideDensity / outsideDensity;
+	}
+
+	/**
+	 * Tells whether a bin next to the chosen range should join it.
+	 */
+	private static boolean belongs( int bin, int peak, double regionArea, double outsideArea ) {
+		return _inside[bin] >= PEAK_FRACTION * _inside[peak] && lift(bin, regionArea, outsideArea) > MIN_LIFT;
+	}
+
+	/**
+	 * Counts the pixels of one bin of one plane, inside and outside the
+	 * region.  Each particle is split by the share of its bounding rectangle
+	 * inside the region.
+	 */
+	private static void count( ColorImage image, int left, int top, int right, int bottom, int plane, int bin ) throws NIVisionException {
+		int[] range = { 0, 255, 0, 255, 0, 255 };
+		range[2 * plane] = bin * BIN_WIDTH;
+		range[2 * plane + 1] = (bin + 1) * BIN_WIDTH - 1;
+
+		BinaryImage binImage = null;
+		try {
+			binImage = image.thresholdRGB(range[0], range[1], range[2], range[3], range[4], range[5]);
+			_inside[bin] = 0;
+			_outside[bin] = 0;
+			int particles = binImage.getNumberParticles();
+			for ( int i = 0; i < particles; i++ ) {
+				ParticleAnalysisReport p = binImage.getParticleAnalysisReport(i);
+				double boxArea = (double) p.boundingRectWidth * p.boundingRectHeight;
+				int overlapWidth = Math.min(right, p.boundingRectLeft + p.boundingRectWidth) - Math.max(left, p.boundingRectLeft);
+				int overlapHeight = Math.min(bottom, p.boundingRectTop + p.boundingRectHeight) - Math.max(top, p.boundingRectTop);
+				double share = 0;
+				if ( overlapWidth > 0 && overlapHeight > 0 && boxArea > 0 ) {
+					share = overlapWidth * overlapHeight / boxArea;
+				}
+				_inside[bin] += share * p.particleArea;
+				_outside[bin] += (1 - share) * p.particleArea;
+			}
+		}
+		finally {
+			if ( binImage != null ) {
+				binImage.free();
+			}
+		}
+	}
+}
@@ -0,0 +1,227 @@
+package robot.camera;
+
+import edu.wpi.first.wpilibj.image.ColorImage;
+import edu.wpi.first.wpilibj.image.NIVisionException;
+import edu.wpi.first.wpilibj.image.RGBImage;
+import robot.IO.DataIO;
+import robot.RobotObject;
+
+/**
+ * Replays recorded camera frames through RobotCamera.findTarget() and reports
+ * how accurate and how fast detection was.  Run from test mode, so that a
+ * change to the vision code can be checked against the same frames every time
+ * instead of against whatever the camera happens to see.
+ *
+ * Frames are image files in VISION_DIRECTORY on the cRIO.  They are described
+ * by the LABEL_FILE, one frame per line:
+ * <pre>
+ * frame01.png 112 40 58 20 180   % file, x, y, w, h of the target, distance in inches
+ * frame02.png 0 0 0 0 0          % w = 0 means no target is visible
+ * </pre>
+ * Text after '%' or '#' is ignored.  The report is written to REPORT_FILE.
+ * @author Adambots 245
+ */
+public abstract class VisionRegression extends RobotObject {
+	//// PRINT FILTERING -------------------------------------------------------
+
+	/** Hide RobotObject field to allow for proper print filtering. */
+	public static boolean verboseOutput = true;
+
+	//// CONSTANTS -------------------------------------------------------------
+
+	/** Directory (from the cRIO root) containing the recorded frames. */
+	public static final String VISION_DIRECTORY = "/vision/";
+	/** Label file, as named for DataIO.getFileLines(). */
+	public static final String LABEL_FILE = "vision/labels";
+	/** Report file, as named for DataIO.writeToFile(). */
+	public static final String REPORT_FILE = "vision/report";
+	/** Overlap (intersection over union) needed to count as a detection. */
+	public static final double MIN_OVERLAP = 0.5;
+
+	//// RUN -------------------------------------------------------------------
+
+	/**
+	 * Runs every labeled frame through the detector, then prints and writes
+	 * the report.  Takes several seconds; only call from test mode.
+	 * @return The report, or null if there were no labels.
+	 */
+	public static String run() {
+		String[] lines = DataIO.getFileLines(LABEL_FILE);
+		long[] millis = new long[lines.length];
+		int frames = 0;
+		int unreadable = 0;
+		int malformed = 0;
+		int labeled = 0;
+		int detected = 0;
+		int falsePositives = 0;
+		double centerError = 0;
+		double sizeError = 0;
+		double distanceError = 0;
+		String failures = "";
+
+		for ( int i = 0; i < lines.length; i++ ) {
+			String[] fields = parseLine(lines[i]);
+			if ( fields == null ) {
+				malformed++;
+				failures += "line " + (i + 1) + "\tmalformed\n";
+				continue;
+			}
+			if ( fields.length == 0 ) {
+				continue;
+			}
+			String name = fields[0];
+			int x, y, w, h;
+			double distance;
+			try {
+				x = Integer.parseInt(fields[1]);
+				y = Integer.parseInt(fields[2]);
+				w = Integer.parseInt(fields[3]);
+				h = Integer.parseInt(fields[4]);
+				distance = Double.parseDouble(fields[5]);
+			}
+			catch (NumberFormatException e) {
+				malformed++;
+				failures += "line " + (i + 1) + "\tmalformed\n";
+				continue;
+			}
+
+			ColorImage image = null;
+			RobotCamera.Target found;
+			try {
+				image = new RGBImage(VISION_DIRECTORY + name);
+				long start = System.currentTimeMillis();
+				found = RobotCamera.findTarget(image);
+				millis[frames] = System.currentTimeMillis() - start;
+				frames++;
+			}
+			catch (NIVisionException e) {
+				unreadable++;
+				failures += name + "\tunreadable\n";
+				continue;
+			}
+			finally {
+				try {
+					if ( image != null ) {
+						image.free();
+					}
+				}
+				catch (NIVisionException e) {
+				}
+			}
+
+			if ( w == 0 ) {
+				if ( found != null ) {
+					falsePositives++;
+					failures += name + "\tfalse positive\n";
+				}
+				continue;
+			}
+			labeled++;
+			RobotCamera.Target expected = new RobotCamera.Target(x, y, w, h);
+			if ( found == null || overlap(found, expected) < MIN_OVERLAP ) {
+				failures += name + "\tmissed\n";
+				continue;
+			}
+			detected++;
+			double dx = (found.x + found.w / 2.0) - (expected.x + expected.w / 2.0);
+			double dy = (found.y + found.h / 2.0) - (expected.y + expected.h / 2.0);
+			centerError += Math.sqrt(dx * dx + dy * dy);
+			sizeError += Math.abs((found.w + found.h) - (expected.w + expected.h)) / 2.0;
+			distanceError += Math.abs(CameraModel.distanceInches(found) - distance);
+		}
+
+		if ( frames + unreadable == 0 ) {
+			println("VisionRegression :: no labeled frames in " + LABEL_FILE);
+			return null;
+		}
+
+		sort(millis, frames);
+		String report = "Vision Regression" + "\n"
+				+ "frames\t" + frames + "\n"
+				+ "unreadable\t" + unreadable + "\n"
+				+ "malformed\t" + malformed + "\n"
+				+ "detected\t" + detected + "/" + labeled + "\n"
+				+ "false positives\t" + falsePositives + "\n"
+				+ "mean center error px\t" + (detected == 0 ? 0 : centerError / detected) + "\n"
+				+ "mean size error px\t" + (detected == 0 ? 0 : sizeError / detected) + "\n"
+				+ "mean distance error in\t" + (detected == 0 ? 0 : distanceError / detected) + "\n"
+				+ "ms (mean/p90/max)\t" + mean(millis, frames) + "/" + (frames == 0 ? 0 : millis[(int) (0.9 * (frames - 1) + 0.5)]) + "/" + (frames == 0 ? 0 : millis[frames - 1]) + "\n"
+				+ failures;
+		println(report);
+		DataIO.writeToFile(REPORT_FILE, report);
+		return report;
+	}
+
+	//// HELPERS ---------------------------------------------------------------
+
+	/**
+	 * Splits a label line into its six fields.
+	 * @return The fields, no fields for blank and comment lines, or null for
+	 * lines with the wrong number of fields.
+	 */
+	private static String[] parseLine( String line ) {
+		int comment = line.indexOf('%');
+		if ( comment == -1 ) {
+			comment = line.indexOf('#');
+		}
+		if ( comment != -1 ) {
+			line = line.substring(0, comment);
+		}
+
+		String[] fields = new String[6];
+		int count = 0;
+		int start = -1;
+		for ( int i = 0; i <= line.length(); i++ ) {
+			boolean space = i == line.length() || line.charAt(i) <= ' ';
+			if ( !space && start == -1 ) {
+				start = i;
+			} else if ( space && start != -1 ) {
+				if ( count == fields.length ) {
+					return null;
+				}
+				fields[count++] = line.substring(start, i);
+				start = -1;
+			}
+		}
+		if ( count == 0 ) {
+			return new String[0];
+		}
+		return count == fields.length ? fields : null;
+	}
+
+	/**
+	 * Returns the intersection over union of two rectangles.
+	 */
+	private static double overlap( RobotCamera.Target a, RobotCamera.Target b ) {
+		int w = Math.min(a.x2, b.x2) - Math.max(a.x, b.x);
+		int h = Math.min(a.y2, b.y2) - Math.max(a.y, b.y);
+		if ( w <= 0 || h <= 0 ) {
+			return 0;
+		}
+		double intersection = (double) w * h;
+		return intersection / (a.w * a.h + b.w * b.h - intersection);
+	}
+
+	private static double mean( long[] values, int count ) {
+		if ( count == 0 ) {
+			return 0;
+		}
+		long sum = 0;
+		for ( int i = 0; i < count; i++ ) {
+			sum += values[i];
+		}
+		return (double) sum / count;
+	}
+
+	private static void sort( long[] values, int count ) {
+		for ( int i = 1; i < count; i++ ) {
+			long v = values[i];
+			int j = i - 1;
+			while ( j >= 0 && values[j] > v ) {
+				values[j + 1] = values[j];
+				j--;
+			}
+			values[j + 1] = v;
+		}
+	}
+}
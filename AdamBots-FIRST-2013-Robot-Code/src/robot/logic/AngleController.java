@@ -0,0 +1,256 @@
+package robot.logic;
+
+import edu.wpi.first.wpilibj.SpeedController;
+import robot.IO.DataIO;
+import utils.TrapezoidProfile;
+
+/**
+ * Position controller for a pivoting mechanism such as the shooter.  Each new
+ * target angle is reached along a trapezoidal profile; the motor is driven by
+ * a feedforward from the profile's velocity and acceleration, PD feedback on
+ * the error from the profile, and a gravity term proportional to the cosine
+ * of the angle.  The caller supplies the angle and its rate, which should be
+ * filtered (see FancyAnalogChannel) so the derivative term does not amplify
+ * sensor noise.
+ *
+ * Once the profile has ended inside the tolerance the controller holds with
+ * the gravity term alone, and moves again only if the angle drifts to twice
+ * the tolerance, so it does not hunt around the target.  update() must be
+ * called periodically.
+ * @author Adambots 245
+ */
+public class AngleController {
+	//// PRIVATE VARIABLES -----------------------------------------------------
+
+	private final SpeedController _motor;
+	/** Whether positive motor output lowers the angle. */
+	private final boolean _inverted;
+	private final TrapezoidProfile _profile;
+
+	// Gains, per degree, degree/s and degree/s^2 of the output toward higher angles
+	private double _kP;
+	private double _kD;
+	private double _kV;
+	private double _kA = 0;
+	/** Output which holds the mechanism level against gravity. */
+	private double _kG = 0;
+	private double _maxOutput = 1;
+	private double _tolerance;
+
+	private boolean _enabled = false;
+	private double _target = 0;
+	private long _planMillis = 0;
+	private boolean _holding = false;
+	private double _referenceAngle = 0;
+	private double _referenceVelocity = 0;
+	private double _output = 0;
+
+	// Latest Measurement
+	private boolean _measured = false;
+	private double _angle = 0;
+	private double _velocity = 0;
+
+	//// CONSTRUCTOR -----------------------------------------------------------
+
+	/**
+	 * @param Kp Output per degree of error from the profile.
+	 * @param Kd Output per degree/second of velocity error.
+	 * @param kV Feedforward output per degree/second of planned velocity.
+	 * @param maxVelocity Cruising speed of the profile in degrees/second.
+	 * @param maxAcceleration Acceleration of the profile in degrees/second^2.
+	 * @param tolerance Degrees from the target that count as in position.
+	 * @param motor Drives the mechanism.
+	 * @param inverted TRUE if positive motor output lowers the angle.
+	 */
+	public AngleController( double Kp, double Kd, double kV, double maxVelocity, double maxAcceleration, double tolerance, SpeedController motor, boolean inverted ) {
+		_kP = Kp;
+		_kD = Kd;
+		_kV = kV;
+		_tolerance = tolerance;
+		_profile = new TrapezoidProfile(maxVelocity, maxAcceleration);
+		_motor = motor;
+		_inverted = inverted;
+	}
+
+	//// CONFIGURATION ---------------------------------------------------------
+
+	/**
+	 * Loads kV and kG from the calibration file, keeping the current values
+	 * for names that are missing.
+	 * @param kVName Calibration name of kV.
+	 * @param kGName Calibration name of kG.
+	 */
+	public void loadFeedforward( String kVName, String kGName ) {
+		_kV = DataIO.getCalibration(kVName, _kV);
+		_kG = DataIO.getCalibration(kGName, _kG);
+	}
+
+	public void setFeedforward( double kV, double kA, double kG ) {
+		_kV = kV;
+		_kA = kA;
+		_kG = kG;
+	}
+
+	public void setPD( double Kp, double Kd ) {
+		_kP = Kp;
+		_kD = Kd;
+	}
+
+	public void setMaxOutput( double maxOutput ) {
+		_maxOutput = Math.abs(maxOutput);
+	}
+
+	/**
+	 * Sets the profile limits used for the next move.
+	 */
+	public void setProfileLimits( double maxVelocity, double maxAcceleration ) {
+		_profile.setLimits(maxVelocity, maxAcceleration);
+	}
+
+	//// CONTROL ---------------------------------------------------------------
+
+	/**
+	 * Sets the target angle.  A changed target is planned from the current
+	 * reference, so a move in progress bends smoothly toward it, or from the
+	 * measured angle if the mechanism was holding.
+	 * @param degrees Target angle.
+	 */
+	public void setTarget( double degrees ) {
+		if ( degrees == _target ) {
+			return;
+		}
+		_target = degrees;
+		if ( _enabled && _measured ) {
+			if ( _holding ) {
+				_referenceAngle = _angle;
+				_referenceVelocity = _velocity;
+			}
+			replan(System.currentTimeMillis());
+		}
+	}
+
+	/**
+	 * Starts controlling the motor.  The first update() plans from the
+	 * measured angle unless it is already in position.
+	 */
+	public void enable() {
+		if ( _enabled ) {
+			return;
+		}
+		_enabled = true;
+		_holding = true;
+	}
+
+	/**
+	 * Stops controlling the motor, leaving it stopped and free for manual
+	 * control.
+	 */
+	public void disable() {
+		if ( !_enabled ) {
+			return;
+		}
+		_enabled = false;
+		_output = 0;
+		_motor.set(0);
+	}
+
+	public boolean isEnabled() {
+		return _enabled;
+	}
+
+	/**
+	 * Records the angle and, if enabled, drives the motor.
+	 * @param angle The filtered angle in degrees.
+	 * @param velocity The estimated angular velocity in degrees/second.
+	 * @param atLowerLimit TRUE if the mechanism cannot move lower, such as
+	 * when a limit switch is pressed.
+	 */
+	public void update( double angle, double velocity, boolean atLowerLimit ) {
+		long now = System.currentTimeMillis();
+		_measured = true;
+		_angle = angle;
+		_velocity = velocity;
+		if ( !_enabled ) {
+			return;
+		}
+
+		// Nothing below the limit is reachable; stop there instead of pushing
+		if ( atLowerLimit && _profile.getGoal() < angle ) {
+			_referenceAngle = angle;
+			_referenceVelocity = 0;
+			_profile.plan(angle, 0, angle);
+			_planMillis = now;
+			_holding = true;
+		}
+
+		double t = (now - _planMillis) / 1000.0;
+		double gravity = _kG * Math.cos(Math.toRadians(angle));
+		if ( _holding ) {
+			if ( Math.abs(_target - angle) < 2 * _tolerance || (atLowerLimit && _target < angle) ) {
+				drive(gravity);
+				return;
+			}
+			_referenceAngle = angle;
+			_referenceVelocity = velocity;
+			replan(now);
+			t = 0;
+		}
+
+		_referenceAngle = _profile.position(t);
+		_referenceVelocity = _profile.velocity(t);
+		if ( _profile.isFinished(t) && Math.abs(_target - angle) < _tolerance ) {
+			_holding = true;
+			drive(gravity);
+			return;
+		}
+		drive(_kV * _referenceVelocity + _kA * _profile.acceleration(t) + gravity
+				+ _kP * (_referenceAngle - angle) + _kD * (_referenceVelocity - velocity));
+	}
+
+	private void replan( long now ) {
+		_profile.plan(_referenceAngle, _referenceVelocity, _target);
+		_planMillis = now;
+		_holding = false;
+	}
+
+	/**
+	 * @param output Output toward higher angles.
+	 */
+	private void drive( double output ) {
+		_output = Math.max(-_maxOutput, Math.min(_maxOutput, output));
+		_motor.set(_inverted ? -_output : _output);
+	}
+
+	//// GETTER METHODS --------------------------------------------------------
+
+	/** @return The angle given to the last update(). */
+	public double getAngle() {
+		return _angle;
+	}
+
+	/** @return The angular velocity given to the last update(). */
+	public double getVelocity() {
+		return _velocity;
+	}
+
+	/** @return Where the profile says the mechanism should be now. */
+	public double getReferenceAngle() {
+		return _referenceAngle;
+	}
+
+	public double getTarget() {
+		return _target;
+	}
+
+	/** @return Last output toward higher angles. */
+	public double getOutput() {
+		return _output;
+	}
+
+	/**
+	 * Tells whether the move has finished within the tolerance of the target.
+	 */
+	public boolean isInPosition() {
+		return _enabled && _holding && Math.abs(_target - _angle) < 2 * _tolerance;
+	}
+}
@@ -0,0 +1,575 @@
+package robot.logic;
+
+import edu.wpi.first.wpilibj.PIDOutput;
+import edu.wpi.first.wpilibj.PIDSource;
+import edu.wpi.first.wpilibj.SpeedController;
+import robot.IO.DataIO;
+
+/**
+ * Velocity controller for a flywheel.  In the default FEEDFORWARD_PID mode the
+ * motor is driven by a feedforward from a characterized model of the wheel
+ * (kV * rpm + kS), so the wheel reaches about the right speed with no help; a
+ * FancyPIDController on the measured RPM only trims the remaining error.
+ * BANG_BANG mode applies full output below the setpoint and none above it,
+ * for the fastest recovery after a shot.  TAKE_BACK_HALF mode integrates the
+ * error and halves back toward the last crossing output whenever the error
+ * changes sign, for smooth convergence without tuning three gains.
+ *
+ * The PID loop runs on its own timer and hands its trim to pidWrite(), which
+ * applies the current mode and drives the motor.  pidWrite() also decides
+ * whether the wheel is at speed, so the answer does not depend on how often
+ * callers ask: the wheel settles once the error has stayed within the
+ * tolerance (a percentage of the setpoint) for the settle time, and is no
+ * longer at speed once the error leaves the wider exit band.  It also times
+ * each spin-up, measures the steady-state error once the wheel has settled,
+ * and times the recovery from each dip (such as a shot) so the modes can be
+ * compared.
+ *
+ * A feed can be coordinated with the controller in FEEDFORWARD_PID mode:
+ * startBoost() adds the learned boost output ahead of the feed, so the wheel
+ * is gaining speed when the disc arrives, and the boost is removed once the
+ * wheel has recovered to its setpoint after the dip.  After each boosted shot
+ * the boost is corrected by the shot's residual droop less any overspeed at
+ * the feed, so over several shots it converges on the output which keeps the
+ * speed centred on the setpoint through the shot.  A shot whose dip never
+ * outweighs the overspeed (the boost was too large) times out, and is learned
+ * from then, so the boost shrinks as well as grows.
+ * @author Adambots 245
+ */
+public class FlywheelController implements PIDOutput {
+	//// CONSTANTS -------------------------------------------------------------
+
+	/** Default time within tolerance after which the wheel counts as settled. */
+	public static final long DEFAULT_SETTLE_MILLIS = 250;
+	/** Default exit band, as a multiple of the tolerance. */
+	public static final double DEFAULT_HYSTERESIS = 2.0;
+	/** Weight of each new sample in the steady-state error average. */
+	public static final double ERROR_WEIGHT = 0.05;
+
+	// Control Modes
+	public static final int FEEDFORWARD_PID = 0;
+	public static final int BANG_BANG = 1;
+	public static final int TAKE_BACK_HALF = 2;
+	private static final String[] MODE_NAMES = { "feedforward+PID", "bang-bang", "take-back-half" };
+
+	/** Time the boost is applied before the feeder extends. */
+	public static final long BOOST_LEAD_MILLIS = 100;
+	/** A boost not followed by a feed in this time is dropped. */
+	public static final long BOOST_LEAD_TIMEOUT_MILLIS = 500;
+	/** A boost is dropped if the wheel has not recovered in this time after the feed; it is learned from only if the wheel overspeeded. */
+	public static final long BOOST_TIMEOUT_MILLIS = 1500;
+	/** A dip shallower than this after a feed does not end the boost on recovery. */
+	public static final double BOOST_MIN_DIP_RPM = 50;
+	/** Fraction of each shot's residual droop, as output, added to the boost. */
+	public static final double BOOST_LEARN_RATE = 0.3;
+	public static final double BOOST_MAX_OUTPUT = 0.3;
+
+	// Boost States
+	private static final int BOOST_OFF = 0;
+	private static final int BOOST_LEAD = 1;
+	private static final int BOOST_FEED = 2;
+
+	//// PRIVATE VARIABLES -----------------------------------------------------
+
+	private final FancyPIDController _pid;
+	private final SpeedController _motor;
+
+	/** Output per RPM. */
+	private double _kV;
+	/** Output needed to overcome friction. */
+	private double _kS;
+	private double _minOutput = 0;
+	private double _maxOutput = 1;
+	/** Tolerance, as a percentage of the setpoint, for settling. */
+	private double _tolerancePercent = 1;
+	private long _settleMillis = DEFAULT_SETTLE_MILLIS;
+	private double _hysteresis = DEFAULT_HYSTERESIS;
+
+	private boolean _enabled = false;
+	private double _setpoint = 0;
+	private int _mode = FEEDFORWARD_PID;
+
+	// Take-Back-Half State
+	/** Output change per RPM of error per sample. */
+	private double _tbhGain = 0.00001;
+	private double _tbhOutput = 0;
+	/** Output at the last zero crossing of the error. */
+	private double _tbhValue = 0;
+	private boolean _tbhLastPositive = true;
+
+	// Metrics
+	private long _setpointMillis = 0;
+	private boolean _inTolerance = false;
+	private long _toleranceEnterMillis = 0;
+	/** Settled since the last setpoint change; stays set through dips. */
+	private boolean _settled = false;
+	/** Settled and not since outside the exit band. */
+	private boolean _atSpeed = false;
+	private long _spinUpMillis = -1;
+	private double _steadyStateError = 0;
+	/** Start of the current dip below tolerance after settling, or 0. */
+	private long _dipMillis = 0;
+	private double _dipDepth = 0;
+	private long _recoveryMillis = -1;
+	private double _lastDipDepth = 0;
+
+	// Feed Boost
+	/** Output added around a feed, learned from past shots. */
+	private double _boostOutput = 0;
+	private int _boostState = BOOST_OFF;
+	private long _boostStartMillis = 0;
+	private double _lastError = 0;
+	/** Speed above the setpoint when the feeder extended. */
+	private double _feedOverspeed = 0;
+	/** Deepest speed below the setpoint since the feeder extended. */
+	private double _feedDip = 0;
+	private double _lastFeedDroop = 0;
+
+	//// CONSTRUCTOR -----------------------------------------------------------
+
+	/**
+	 * @param Kp Proportional gain of the trim.
+	 * @param Ki Integral gain of the trim.
+	 * @param Kd Derivative gain of the trim.
+	 * @param kV Feedforward output per RPM.
+	 * @param kS Feedforward output to overcome friction.
+	 * @param source Measures the wheel speed in RPM.
+	 * @param motor Drives the wheel.
+	 */
+	public FlywheelController( double Kp, double Ki, double Kd, double kV, double kS, PIDSource source, SpeedController motor ) {
+		_pid = new FancyPIDController(Kp, Ki, Kd, source, this);
+		_motor = motor;
+		_kV = kV;
+		_kS = kS;
+	}
+
+	//// CONFIGURATION ---------------------------------------------------------
+
+	/**
+	 * Loads kV and kS from the calibration file, keeping the current values
+	 * for names that are missing.
+	 * @param kVName Calibration name of kV.
+	 * @param kSName Calibration name of kS.
+	 */
+	public synchronized void loadFeedforward( String kVName, String kSName ) {
+		_kV = DataIO.getCalibration(kVName, _kV);
+		_kS = DataIO.getCalibration(kSName, _kS);
+	}
+
+	public synchronized void setFeedforward( double kV, double kS ) {
+		_kV = kV;
+		_kS = kS;
+	}
+
+	public synchronized double getKV() {
+		return _kV;
+	}
+
+	public synchronized double getKS() {
+		return _kS;
+	}
+
+	public void setPID( double Kp, double Ki, double Kd ) {
+		_pid.setPID(Kp, Ki, Kd);
+	}
+
+	public void setInputRange( double min, double max ) {
+		_pid.setInputRange(min, max);
+	}
+
+	/**
+	 * Limits the PID trim added to the feedforward.
+	 * @param range The trim lies within +/- range.
+	 */
+	public void setTrimRange( double range ) {
+		_pid.setOutputRange(-range, range);
+	}
+
+	/**
+	 * Limits the total output sent to the motor.
+	 */
+	public synchronized void setOutputRange( double min, double max ) {
+		_minOutput = min;
+		_maxOutput = max;
+	}
+
+	/**
+	 * Sets the output change per RPM of error per sample in TAKE_BACK_HALF mode.
+	 */
+	public synchronized void setTakeBackHalfGain( double gain ) {
+		_tbhGain = gain;
+	}
+
+	/**
+	 * Selects how the motor output is computed.  Takes effect on the next
+	 * sample; the metrics restart, and so does the PID trim, whose integral
+	 * keeps running while another mode drives the motor.
+	 * @param mode FEEDFORWARD_PID, BANG_BANG or TAKE_BACK_HALF.
+	 */
+	public void setMode( int mode ) {
+		boolean enabled;
+		// The PID loop locks the PIDController, then this; never the reverse
+		synchronized (this) {
+			if (mode == _mode || mode < FEEDFORWARD_PID || mode > TAKE_BACK_HALF) {
+				return;
+			}
+			_mode = mode;
+			restartSettle();
+			resetTakeBackHalf();
+			enabled = _enabled;
+		}
+		_pid.reset();
+		if (enabled) {
+			_pid.enable();
+		}
+	}
+
+	public synchronized int getMode() {
+		return _mode;
+	}
+
+	/**
+	 * Sets the learned feed boost, such as from the calibration file.
+	 */
+	public synchronized void setBoostOutput( double output ) {
+		_boostOutput = Math.max(0, Math.min(BOOST_MAX_OUTPUT, output));
+	}
+
+	public synchronized double getBoostOutput() {
+		return _boostOutput;
+	}
+
+	/**
+	 * Sets the settle tolerance as a percentage of the setpoint.
+	 */
+	public synchronized void setPercentTolerance( double percent ) {
+		_tolerancePercent = percent;
+	}
+
+	/**
+	 * Sets how long the error must stay within tolerance before the wheel is
+	 * at speed, and how far outside the tolerance it must go to stop being
+	 * at speed.
+	 * @param settleMillis Time within tolerance before settling.
+	 * @param hysteresis Exit band as a multiple of the tolerance (at least 1).
+	 */
+	public synchronized void setSettle( long settleMillis, double hysteresis ) {
+		_settleMillis = settleMillis;
+		_hysteresis = Math.max(1, hysteresis);
+	}
+
+	//// CONTROL ---------------------------------------------------------------
+
+	/**
+	 * Sets the target speed, enabling the controller if necessary.
+	 * @param rpm Target RPM.
+	 */
+	public void setRPM( double rpm ) {
+		synchronized (this) {
+			if (rpm != _setpoint) {
+				_setpoint = rpm;
+				restartSettle();
+				resetTakeBackHalf();
+			}
+		}
+		if (!isEnable()) {
+			enable();
+		}
+		_pid.setRPM(rpm);
+	}
+
+	public void enable() {
+		synchronized (this) {
+			_enabled = true;
+			restartSettle();
+		}
+		_pid.enable();
+	}
+
+	/**
+	 * Stops the controller and the motor, leaving the motor free for manual
+	 * control.
+	 */
+	public void disable() {
+		synchronized (this) {
+			_enabled = false;
+			_boostState = BOOST_OFF;
+		}
+		_pid.disable();
+		_motor.set(0);
+	}
+
+	public synchronized boolean isEnable() {
+		return _enabled;
+	}
+
+	/**
+	 * Checks whether the wheel is up to speed, as last determined by
+	 * pidWrite().  Asking does not change the answer.
+	 * @return TRUE if up to speed, FALSE otherwise.
+	 */
+	public synchronized boolean isAtSpeed() {
+		return _atSpeed;
+	}
+
+	/**
+	 * Receives the PID trim, computes the output for the current mode and
+	 * drives the motor.  Called by the PID loop.
+	 * @param trim The PID output.
+	 */
+	public synchronized void pidWrite( double trim ) {
+		if (!_enabled) {
+			return;
+		}
+		double error = _pid.getError();
+		recordSample(error);
+		updateBoost(error);
+
+		double output = 0;
+		if (_setpoint > 0) {
+			switch (_mode) {
+				case BANG_BANG:
+					output = error > 0 ? _maxOutput : _minOutput;
+					break;
+				case TAKE_BACK_HALF:
+					output = takeBackHalf(error);
+					break;
+				default:
+					output = _kV * _setpoint + _kS + trim;
+					if (_boostState != BOOST_OFF) {
+						output += _boostOutput;
+					}
+					break;
+			}
+		}
+		_motor.set(Math.max(_minOutput, Math.min(_maxOutput, output)));
+	}
+
+	/**
+	 * Integrates the error; when it changes sign, the output is set halfway
+	 * between its current value and its value at the previous crossing.
+	 */
+	private double takeBackHalf( double error ) {
+		_tbhOutput = Math.max(_minOutput, Math.min(_maxOutput, _tbhOutput + _tbhGain * error));
+		boolean positive = error > 0;
+		if (positive != _tbhLastPositive) {
+			_tbhOutput = 0.5 * (_tbhOutput + _tbhValue);
+			_tbhValue = _tbhOutput;
+			_tbhLastPositive = positive;
+		}
+		return _tbhOutput;
+	}
+
+	/**
+	 * Restarts take-back-half from the feedforward estimate, so the first
+	 * crossing lands near the right output.
+	 */
+	private void resetTakeBackHalf() {
+		_tbhValue = _setpoint > 0 ? _kV * _setpoint + _kS : 0;
+		_tbhOutput = _tbhValue;
+		_tbhLastPositive = true;
+	}
+
+	//// FEED BOOST ------------------------------------------------------------
+
+	/**
+	 * Starts the boost ahead of a feed.  Only possible in FEEDFORWARD_PID mode
+	 * once the wheel has settled, since the boost is learned around a steady
+	 * speed.
+	 * @return TRUE if the boost started; the feed should wait for
+	 * isBoostReady().  FALSE if the feed should go ahead unboosted, including
+	 * while the previous boosted shot is still recovering.
+	 */
+	public synchronized boolean startBoost() {
+		if (!_enabled || _mode != FEEDFORWARD_PID || !_settled || _setpoint <= 0 || _boostState == BOOST_FEED) {
+			return false;
+		}
+		if (_boostState == BOOST_OFF) {
+			_boostState = BOOST_LEAD;
+			_boostStartMillis = System.currentTimeMillis();
+		}
+		return true;
+	}
+
+	/**
+	 * Tells whether the boost has led the feed for long enough.
+	 */
+	public synchronized boolean isBoostReady() {
+		return _boostState == BOOST_LEAD && System.currentTimeMillis() - _boostStartMillis >= BOOST_LEAD_MILLIS;
+	}
+
+	/**
+	 * Notes that the feeder has extended, so the boost now follows the shot's
+	 * dip and recovery.
+	 */
+	public synchronized void feedStarted() {
+		if (_boostState != BOOST_LEAD) {
+			return;
+		}
+		_boostState = BOOST_FEED;
+		_boostStartMillis = System.currentTimeMillis();
+		_feedOverspeed = Math.max(0, -_lastError);
+		_feedDip = 0;
+	}
+
+	/**
+	 * Drops a boost whose feed was cancelled before the feeder extended.
+	 */
+	public synchronized void cancelBoost() {
+		if (_boostState == BOOST_LEAD) {
+			_boostState = BOOST_OFF;
+		}
+	}
+
+	/**
+	 * Follows the boosted shot and, once the wheel is back at its setpoint,
+	 * ends the boost and learns from the shot.
+	 */
+	private void updateBoost( double error ) {
+		_lastError = error;
+		long elapsed = System.currentTimeMillis() - _boostStartMillis;
+		if (_boostState == BOOST_LEAD) {
+			if (elapsed > BOOST_LEAD_TIMEOUT_MILLIS) {
+				_boostState = BOOST_OFF;
+			}
+		} else if (_boostState == BOOST_FEED) {
+			_feedDip = Math.max(_feedDip, error);
+			if (_feedDip >= BOOST_MIN_DIP_RPM && error <= 0) {
+				_boostState = BOOST_OFF;
+				learnBoost();
+			} else if (elapsed > BOOST_TIMEOUT_MILLIS) {
+				_boostState = BOOST_OFF;
+				// The overspeed absorbed the shot, so the boost was too large
+				if (_feedDip < _feedOverspeed) {
+					learnBoost();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Corrects the boost by the last shot's residual droop: a deeper dip than
+	 * the overspeed at the feed means the boost was too small, and a shallower
+	 * one (a negative droop) that it was too large.
+	 */
+	private void learnBoost() {
+		_lastFeedDroop = _feedDip - _feedOverspeed;
+		_boostOutput = Math.max(0, Math.min(BOOST_MAX_OUTPUT, _boostOutput + BOOST_LEARN_RATE * _kV * _lastFeedDroop));
+		DataIO.storeShooter("Flywheel boosted shot: dip " + _feedDip + " rpm, overspeed " + _feedOverspeed + " rpm, boost now " + _boostOutput);
+	}
+
+	/** @return Dip less overspeed, in RPM, of the most recent boosted shot. */
+	public synchronized double getLastFeedDroop() {
+		return _lastFeedDroop;
+	}
+
+	/** @return TRUE while a boost is applied. */
+	public synchronized boolean isBoosting() {
+		return _boostState != BOOST_OFF;
+	}
+
+	//// METRICS ---------------------------------------------------------------
+
+	private void restartSettle() {
+		_setpointMillis = System.currentTimeMillis();
+		_inTolerance = false;
+		_settled = false;
+		_atSpeed = false;
+		_dipMillis = 0;
+	}
+
+	/**
+	 * Updates the at-speed state and the spin-up, steady-state and recovery
+	 * metrics with a new error sample.
+	 */
+	private void recordSample( double error ) {
+		long now = System.currentTimeMillis();
+		double tolerance = _tolerancePercent / 100 * Math.abs(_setpoint);
+		boolean inTolerance = Math.abs(error) <= tolerance;
+		if (!inTolerance) {
+			_inTolerance = false;
+		} else if (!_inTolerance) {
+			_inTolerance = true;
+			_toleranceEnterMillis = now;
+		}
+		boolean held = _inTolerance && now - _toleranceEnterMillis >= _settleMillis;
+		if (held && _setpoint > 0) {
+			_atSpeed = true;
+		} else if (Math.abs(error) > tolerance * _hysteresis) {
+			_atSpeed = false;
+		}
+
+		if (!_settled && held && _setpoint > 0) {
+			_settled = true;
+			_spinUpMillis = now - _setpointMillis;
+			_steadyStateError = Math.abs(error);
+			DataIO.storeShooter("Flywheel " + MODE_NAMES[_mode] + " spin-up to " + _setpoint + " rpm: " + _spinUpMillis + " ms");
+		} else if (_settled) {
+			// A dip below tolerance (usually a shot) starts a recovery
+			if (_dipMillis == 0 && !inTolerance && error > 0) {
+				_dipMillis = now;
+				_dipDepth = 0;
+			}
+			if (_dipMillis != 0) {
+				_dipDepth = Math.max(_dipDepth, error);
+				if (held) {
+					_recoveryMillis = now - _dipMillis;
+					_lastDipDepth = _dipDepth;
+					_dipMillis = 0;
+					DataIO.storeShooter("Flywheel " + MODE_NAMES[_mode] + " recovery from -" + _lastDipDepth + " rpm: " + _recoveryMillis + " ms");
+				}
+			} else {
+				_steadyStateError += ERROR_WEIGHT * (Math.abs(error) - _steadyStateError);
+			}
+		}
+	}
+
+	/**
+	 * Returns how long the most recent spin-up took, from the setpoint change
+	 * (or enable) until the wheel settled.
+	 * @return Milliseconds, or -1 if the wheel has never settled.
+	 */
+	public synchronized long getSpinUpMillis() {
+		return _spinUpMillis;
+	}
+
+	/**
+	 * Returns the average absolute error since the wheel last settled.
+	 * @return RPM.
+	 */
+	public synchronized double getSteadyStateError() {
+		return _steadyStateError;
+	}
+
+	/**
+	 * Returns how long the wheel took to return to tolerance after the most
+	 * recent dip.
+	 * @return Milliseconds, or -1 if no dip has been recovered from.
+	 */
+	public synchronized long getRecoveryMillis() {
+		return _recoveryMillis;
+	}
+
+	/** @return Deepest error, in RPM, during the most recent recovered dip. */
+	public synchronized double getLastDipDepth() {
+		return _lastDipDepth;
+	}
+
+	/**
+	 * Returns how long the error has stayed within tolerance without
+	 * interruption.
+	 * @return Milliseconds, or 0 if the error is outside tolerance.
+	 */
+	public synchronized long getTimeInToleranceMillis() {
+		return _inTolerance ? System.currentTimeMillis() - _toleranceEnterMillis : 0;
+	}
+
+	/** @return TRUE once the wheel has settled at the current setpoint. */
+	public synchronized boolean isSettled() {
+		return _settled;
+	}
+
+	public synchronized double getSetpoint() {
+		return _setpoint;
+	}
+}
@@ -0,0 +1,307 @@
+package robot.logic;
+
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import robot.IO.DataIO;
+import robot.RobotObject;
+import robot.actuators.RobotActuators;
+import robot.behavior.RobotShoot;
+import robot.sensors.RobotSensors;
+
+/**
+ * Tunes the shooter wheel in test mode.  Press "Shooter Autotune" on the
+ * SmartDashboard with the wheel clear; run() must then be called from
+ * testPeriodic().
+ *
+ * <ol>
+ *	<li>Identify: the wheel is driven open loop at STEP_LOW_OUTPUT until
+ *		steady, then stepped to STEP_HIGH_OUTPUT.  A first order plus dead
+ *		time model is fitted to the response by the two-point method (28% and
+ *		63% rise times), and the two steady speeds give the feedforward.</li>
+ *	<li>Compute: PI trim gains from the model by the SIMC rules.</li>
+ *	<li>Validate: the wheel coasts down, the new gains spin it up to
+ *		VALIDATE_RPM, and a step from RECOVERY_FRACTION of that speed back up
+ *		stands in for the recovery after a shot.</li>
+ * </ol>
+ *
+ * If the wheel settles both times the gains are kept, shown on the dashboard
+ * and saved to the calibration file; otherwise the previous gains are
+ * restored.  Releasing "Shooter Autotune" aborts.
+ * @author Adambots 245
+ */
+public abstract class FlywheelTuner extends RobotObject {
+	//// PRINT FILTERING -------------------------------------------------------
+
+	/** Hide RobotObject field to allow for proper print filtering. */
+	public static boolean verboseOutput = true;
+
+	//// CONSTANTS -------------------------------------------------------------
+
+	public static final double STEP_LOW_OUTPUT = 0.3;
+	public static final double STEP_HIGH_OUTPUT = 0.6;
+	/** Time allowed to reach a steady speed before and after the step. */
+	public static final long STEADY_MILLIS = 4000;
+	/** The steady speed is the average over this final part of STEADY_MILLIS. */
+	public static final long AVERAGE_MILLIS = 500;
+	/** Smallest speed change the step must cause to be believed. */
+	public static final double MIN_STEP_RPM = 300;
+	public static final int MAX_SAMPLES = 400;
+
+	/** Period of the PID loop, which scales the integral gain. */
+	public static final double PID_PERIOD_SECONDS = 0.05;
+
+	public static final double VALIDATE_RPM = 3350;
+	public static final double RECOVERY_FRACTION = 0.9;
+	/** Below this speed the wheel counts as stopped. */
+	public static final double STOPPED_RPM = 300;
+	public static final long COAST_MILLIS = 10000;
+	public static final long SETTLE_TIMEOUT_MILLIS = 6000;
+
+	// States
+	private static final int IDLE = 0;
+	private static final int STEADY_LOW = 1;
+	private static final int STEP = 2;
+	private static final int COAST = 3;
+	private static final int SPIN_UP = 4;
+	private static final int DROP = 5;
+	private static final int RECOVER = 6;
+
+	//// PRIVATE VARIABLES -----------------------------------------------------
+
+	private static int _state = IDLE;
+	private static long _stateStartMillis = 0;
+
+	// Step Response
+	private static final double[] _sampleMillis = new double[MAX_SAMPLES];
+	private static final double[] _sampleRPM = new double[MAX_SAMPLES];
+	private static int _sampleCount = 0;
+	private static double _averageSum = 0;
+	private static int _averageCount = 0;
+	private static double _lowRPM = 0;
+
+	// Model
+	private static double _gain = 0;
+	private static double _timeConstant = 0;
+	private static double _deadTime = 0;
+
+	// Gains Before Tuning
+	private static double _oldKp, _oldKi, _oldKd, _oldKV, _oldKS;
+	// Candidate Gains
+	private static double _kp, _ki, _kV, _kS;
+
+	private static long _spinUpMillis = -1;
+	private static long _recoveryMillis = -1;
+	private static String _status = "idle";
+
+	//// RUN -------------------------------------------------------------------
+
+	/**
+	 * Starts, advances or aborts the tuning from the SmartDashboard.  Call
+	 * from testPeriodic().
+	 */
+	public static void run() {
+		boolean requested = SmartDashboard.getBoolean("Shooter Autotune", false);
+		if (_state == IDLE && requested) {
+			start();
+		} else if (_state != IDLE && !requested) {
+			finish("aborted", false);
+		} else if (_state != IDLE) {
+			step();
+		}
+		SmartDashboard.putString("Autotune Status", _status);
+	}
+
+	/**
+	 * Stops any tuning in progress, restoring the previous gains.
+	 */
+	public static void abort() {
+		if (_state != IDLE) {
+			finish("aborted", false);
+		}
+	}
+
+	private static void start() {
+		FlywheelController wheel = RobotShoot.getShooterController();
+		_oldKp = RobotShoot.SHOOTER_KP;
+		_oldKi = RobotShoot.SHOOTER_KI;
+		_oldKd = RobotShoot.SHOOTER_KD;
+		_oldKV = wheel.getKV();
+		_oldKS = wheel.getKS();
+		_spinUpMillis = -1;
+		_recoveryMillis = -1;
+
+		RobotShoot.stopPID();
+		RobotActuators.shooterWheelMotor.set(STEP_LOW_OUTPUT);
+		enter(STEADY_LOW, "identifying");
+	}
+
+	private static void enter( int state, String status ) {
+		_state = state;
+		_stateStartMillis = System.currentTimeMillis();
+		_averageSum = 0;
+		_averageCount = 0;
+		_status = status;
+		println("FlywheelTuner :: " + status);
+	}
+
+	private static void step() {
+		long elapsed = System.currentTimeMillis() - _stateStartMillis;
+		double rpm = RobotSensors.counterShooterSpeed.pidGet();
+		FlywheelController wheel = RobotShoot.getShooterController();
+
+		switch (_state) {
+			case STEADY_LOW:
+				if (average(rpm, elapsed)) {
+					_lowRPM = _averageSum / _averageCount;
+					_sampleCount = 0;
+					RobotActuators.shooterWheelMotor.set(STEP_HIGH_OUTPUT);
+					enter(STEP, "identifying");
+				}
+				break;
+
+			case STEP:
+				if (_sampleCount < MAX_SAMPLES) {
+					_sampleMillis[_sampleCount] = elapsed;
+					_sampleRPM[_sampleCount] = rpm;
+					_sampleCount++;
+				}
+				if (average(rpm, elapsed)) {
+					if (!identify(_averageSum / _averageCount)) {
+						finish("no usable step response", false);
+						return;
+					}
+					RobotActuators.shooterWheelMotor.set(0);
+					enter(COAST, "validating spin-up");
+				}
+				break;
+
+			case COAST:
+				if (rpm < STOPPED_RPM || elapsed > COAST_MILLIS) {
+					RobotShoot.setShooterGains(_kp, _ki, 0);
+					RobotShoot.setShooterFeedforward(_kV, _kS);
+					RobotShoot.setSpeed(VALIDATE_RPM);
+					enter(SPIN_UP, "validating spin-up");
+				}
+				break;
+
+			case SPIN_UP:
+				if (wheel.isSettled()) {
+					_spinUpMillis = wheel.getSpinUpMillis();
+					RobotShoot.setSpeed(VALIDATE_RPM * RECOVERY_FRACTION);
+					enter(DROP, "validating recovery");
+				} else if (elapsed > SETTLE_TIMEOUT_MILLIS) {
+					finish("spin-up did not settle", false);
+				}
+				break;
+
+			case DROP:
+				if (wheel.isSettled()) {
+					RobotShoot.setSpeed(VALIDATE_RPM);
+					enter(RECOVER, "validating recovery");
+				} else if (elapsed > SETTLE_TIMEOUT_MILLIS) {
+					finish("did not settle below target", false);
+				}
+				break;
+
+			case RECOVER:
+				if (wheel.isSettled()) {
+					_recoveryMillis = wheel.getSpinUpMillis();
+					finish("done", true);
+				} else if (elapsed > SETTLE_TIMEOUT_MILLIS) {
+					finish("recovery did not settle", false);
+				}
+				break;
+		}
+	}
+
+	/**
+	 * Averages the speed over the end of STEADY_MILLIS.
+	 * @return TRUE once STEADY_MILLIS has passed.
+	 */
+	private static boolean average( double rpm, long elapsed ) {
+		if (elapsed >= STEADY_MILLIS - AVERAGE_MILLIS) {
+			_averageSum += rpm;
+			_averageCount++;
+		}
+		return elapsed >= STEADY_MILLIS && _averageCount > 0;
+	}
+
+	//// IDENTIFICATION --------------------------------------------------------
+
+	/**
+	 * Fits the model to the recorded step and computes candidate gains.
+	 * @param highRPM Steady speed after the step.
+	 * @return FALSE if the response is too small or not understood.
+	 */
+	private static boolean identify( double highRPM ) {
+		double change = highRPM - _lowRPM;
+		if (change < MIN_STEP_RPM) {
+			return false;
+		}
+		double t28 = riseTime(0.283, change);
+		double t63 = riseTime(0.632, change);
+		if (t28 < 0 || t63 <= t28) {
+			return false;
+		}
+
+		// Two-point method: t28 = theta + tau / 3, t63 = theta + tau
+		_timeConstant = 1.5 * (t63 - t28);
+		_deadTime = Math.max(0, t63 - _timeConstant);
+		_gain = change / (STEP_HIGH_OUTPUT - STEP_LOW_OUTPUT);
+
+		_kV = 1 / _gain;
+		_kS = STEP_LOW_OUTPUT - _kV * _lowRPM;
+
+		// SIMC PI; the feedforward does most of the work, so the trim is gentle
+		double closedLoop = Math.max(_deadTime, _timeConstant / 2);
+		double integralTime = Math.min(_timeConstant, 4 * (closedLoop + _deadTime));
+		_kp = _timeConstant / (_gain * (closedLoop + _deadTime));
+		_ki = _kp * PID_PERIOD_SECONDS / integralTime;
+
+		DataIO.storeShooter("Autotune model: K=" + _gain + " rpm/output tau=" + _timeConstant + " s theta=" + _deadTime + " s");
+		println("FlywheelTuner :: K=" + _gain + " tau=" + _timeConstant + " theta=" + _deadTime
+				+ " kV=" + _kV + " kS=" + _kS + " Kp=" + _kp + " Ki=" + _ki);
+		return true;
+	}
+
+	/**
+	 * @return Seconds after the step at which the given fraction of the
+	 * change was first reached, or -1 if it never was.
+	 */
+	private static double riseTime( double fraction, double change ) {
+		double threshold = _lowRPM + fraction * change;
+		for (int i = 0; i < _sampleCount; i++) {
+			if (_sampleRPM[i] >= threshold) {
+				return _sampleMillis[i] / 1000.0;
+			}
+		}
+		return -1;
+	}
+
+	//// FINISH ----------------------------------------------------------------
+
+	private static void finish( String status, boolean keep ) {
+		RobotShoot.stopPID();
+		if (keep) {
+			RobotShoot.setShooterFeedforward(_kV, _kS);
+			DataIO.setCalibration("SHOOTER_KP", _kp);
+			DataIO.setCalibration("SHOOTER_KI", _ki);
+			DataIO.setCalibration("SHOOTER_KD", 0);
+			DataIO.setCalibration("SHOOTER_KV", _kV);
+			DataIO.setCalibration("SHOOTER_KS", _kS);
+			DataIO.saveCalibrations();
+		} else {
+			RobotShoot.setShooterGains(_oldKp, _oldKi, _oldKd);
+			RobotShoot.setShooterFeedforward(_oldKV, _oldKS);
+		}
+		DataIO.storeShooter("Autotune " + status + ": spin-up " + _spinUpMillis + " ms, recovery " + _recoveryMillis + " ms");
+
+		SmartDashboard.putBoolean("Shooter Autotune", false);
+		SmartDashboard.putNumber("Autotune Spin-Up Millis", _spinUpMillis);
+		SmartDashboard.putNumber("Autotune Recovery Millis", _recoveryMillis);
+		SmartDashboard.putNumber("Autotune Time Constant", _timeConstant);
+		SmartDashboard.putNumber("Autotune Dead Time", _deadTime);
+		_state = IDLE;
+		_status = status;
+		println("FlywheelTuner :: " + status);
+	}
+}
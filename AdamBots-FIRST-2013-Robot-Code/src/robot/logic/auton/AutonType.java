@@ -7,8 +7,8 @@ package robot.logic.auton;
 //import edu.wpi.first.wpilibj.networktables2.util.List;
 import robot.control.MagicBox;
 import robot.logic.tasks.TAwaitStatus;
+import robot.logic.tasks.TBurstFire;
 import robot.logic.tasks.TDelay;
-import robot.logic.tasks.TFeedDisc;
 import robot.logic.tasks.TSetShooterAngle;
 import robot.logic.tasks.TSetShooterSpeed;
 import robot.logic.tasks.TStopShooter;
@@ -130,9 +130,9 @@ public class AutonType {
 		
 		/** Default initial delay for Autonomous (to wait for the compressor). */
 		public static final int DEFAULT_INITIAL_DELAY_MILLIS = 4000;
-		/** Default feed arm delay.  Determines for how long the arm is extended. */ 
+		/** Default feed arm delay.  The longest the arm is extended if the shot is not confirmed sooner. */ 
 		public static final int DEFAULT_FEED_DELAY_MILLIS = 800;
-		/** Default shot delay. */
+		/** Default longest wait for the shooter wheel to recover after a shot. */
 		public static final int DEFAULT_SHOT_DELAY_MILLIS = 800;
 		
 		//// INITIALIZATION ----------------------------------------------------
@@ -176,8 +176,8 @@ public class AutonType {
 		 * </ol>
 		 * 
 		 * @param discs The number of discs to shoot.
-		 * @param feedDelayMillis Delay between expanding and contracting the feeder arm.
-		 * @param shotDelayMillis The number of milliseconds to wait after each shot.
+		 * @param feedDelayMillis Longest delay between expanding and contracting the feeder arm.
+		 * @param shotDelayMillis The longest wait for the shooter wheel to recover after each shot.
 		 * @param initialDelayMillis Initial Delay.
 		 * @return A list of LogicTasks.
 		 * @see robot.logic.LogicTask
@@ -193,10 +193,7 @@ public class AutonType {
 			tasks.add(new TDelay(initialDelayMillis));
 		
 			// Shoot X Discs
-			for(int i = 0; i < discs; i++){
-				tasks.add(new TFeedDisc(feedDelayMillis));
-				tasks.add(new TDelay(shotDelayMillis));
-			}
+			tasks.add(new TBurstFire(discs, feedDelayMillis, shotDelayMillis));
 			
 			// Stop the Shooter
 			tasks.add(new TStopShooter());
@@ -233,15 +230,15 @@ public class AutonType {
 		 *			<li>Enable shooter feeder solenoid.</li>
 		 *			<li>Give the shooter feeder solenoid time to expand.</li>
 		 *			<li>Disable the shooter feeder solenoid.</li>
-		 *			<li>Wait.</li>
+		 *			<li>Wait for the shooter wheel to recover.</li>
 		 *		</ul>
 		 *	<li>Shoot
 		 *  <li>Shoot
 		 * </ol>
 		 * 
 		 * @param discs The number of discs to shoot.
-		 * @param feedDelayMillis Delay between expanding and contracting the feeder arm.
-		 * @param shotDelayMillis The number of milliseconds to wait after each shot.
+		 * @param feedDelayMillis Longest delay between expanding and contracting the feeder arm.
+		 * @param shotDelayMillis The longest wait for the shooter wheel to recover after each shot.
 		 * @param initialDelayMillis Initial Delay.
 		 * @return A list of LogicTasks.
 		 * @see robot.logic.LogicTask
@@ -258,13 +255,10 @@ public class AutonType {
 			tasks.add(new TDelay(initialDelayMillis)); 
 			
 			// Wait for Shooter with a 2s timeout
-			tasks.add(new TAwaitStatus(TAwaitStatus.SHOOTER_IN_POSITION, 2000));
+			tasks.add(new TAwaitStatus(TAwaitStatus.SHOOTER_READY, 2000));
 			
 			// Shoot X Times
-			for(int i = 0; i < discs; i++){
-				tasks.add(new TFeedDisc(feedDelayMillis));
-				tasks.add(new TDelay(shotDelayMillis));
-			}
+			tasks.add(new TBurstFire(discs, feedDelayMillis, shotDelayMillis));
 			
 			// Stop the Shooter
 			tasks.add(new TStopShooter());
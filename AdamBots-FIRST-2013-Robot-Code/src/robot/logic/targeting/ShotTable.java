@@ -0,0 +1,256 @@
+package robot.logic.targeting;
+
+import robot.IO.DataIO;
+import robot.RobotObject;
+import robot.control.MagicBox;
+
+/**
+ * Table of shooter speed and angle against the target's vertical location in
+ * the image (as TargetTracker.getPredictedLocationUnits()), used by both
+ * automatic speed and automatic angle.  The points are read from the file
+ * SHOT_TABLE_FILE, one shot per line:
+ *
+ *     location rpm angle
+ *
+ * Values may be separated by spaces, tabs or commas, and lines starting with
+ * '#' are ignored, so the table can be edited between matches.  It is reloaded
+ * each time the robot is disabled.
+ *
+ * Between points each column follows a monotone cubic (Fritsch-Carlson), so
+ * the speed and angle never overshoot the measured shots.  The curves are
+ * sampled into dense arrays when loaded, so a query is a single linear
+ * interpolation between neighbouring samples.
+ * @author Adambots 245
+ */
+public abstract class ShotTable extends RobotObject {
+	//// PRINT FILTERING -------------------------------------------------------
+
+	/** Hide RobotObject field to allow for proper print filtering. */
+	public static boolean verboseOutput = true;
+
+	//// CONSTANTS -------------------------------------------------------------
+
+	public static final String SHOT_TABLE_FILE = "shots";
+	/** Number of samples in each lookup array. */
+	public static final int LOOKUP_SIZE = 256;
+	/** Most points read from the file. */
+	public static final int MAX_POINTS = 32;
+
+	/**
+	 * Used when the file is missing or unusable: the constant rest speed and
+	 * the old fitted angle (34.7007 - 0.0834654 * location).
+	 */
+	private static final double[][] DEFAULT_POINTS = {
+		{ 0, MagicBox.SHOOTER_REST_SPEED, 34.7007 },
+		{ 240, MagicBox.SHOOTER_REST_SPEED, 34.7007 - 0.0834654 * 240 }
+	};
+
+	//// PRIVATE VARIABLES -----------------------------------------------------
+
+	private static final double[] _rpm = new double[LOOKUP_SIZE];
+	private static final double[] _angle = new double[LOOKUP_SIZE];
+	private static double _minLocation = 0;
+	/** Samples per location unit. */
+	private static double _scale = 1;
+	private static int _pointCount = 0;
+	private static boolean _loaded = false;
+
+	//// LOADING ---------------------------------------------------------------
+
+	/**
+	 * Reads the table from SHOT_TABLE_FILE, falling back to the defaults if
+	 * it has fewer than two usable points, and rebuilds the lookup arrays.
+	 */
+	public static synchronized void load() {
+		double[][] points = new double[MAX_POINTS][];
+		int count = 0;
+		String[] lines = DataIO.getFileLines(SHOT_TABLE_FILE);
+		for (int i = 0; i < lines.length && count < MAX_POINTS; i++) {
+			double[] point = parsePoint(lines[i]);
+			if (point != null) {
+				points[count++] = point;
+			}
+		}
+		sort(points, count);
+
+		// Repeated locations would make the curve undefined
+		int unique = 0;
+		for (int i = 0; i < count; i++) {
+			if (unique == 0 || points[i][0] > points[unique - 1][0]) {
+				points[unique++] = points[i];
+			}
+		}
+
+		if (unique < 2) {
+			println("ShotTable :: no usable shots in " + SHOT_TABLE_FILE + ", using defaults");
+			points = DEFAULT_POINTS;
+			unique = DEFAULT_POINTS.length;
+		}
+		build(points, unique);
+		_pointCount = unique;
+		_loaded = true;
+		println("ShotTable :: " + unique + " shots from " + points[0][0] + " to " + points[unique - 1][0]);
+	}
+
+	/**
+	 * Parses "location rpm angle".
+	 * @return The three values, or null for comments and bad lines.
+	 */
+	private static double[] parsePoint(String line) {
+		line = line.trim();
+		if (line.length() == 0 || line.charAt(0) == '#') {
+			return null;
+		}
+		double[] point = new double[3];
+		int field = 0;
+		int start = -1;
+		for (int i = 0; i <= line.length(); i++) {
+			char c = i < line.length() ? line.charAt(i) : ' ';
+			boolean separator = c == ' ' || c == '\t' || c == ',';
+			if (!separator && start == -1) {
+				start = i;
+			} else if (separator && start != -1) {
+				if (field == 3) {
+					return null;
+				}
+				try {
+					point[field++] = Double.parseDouble(line.substring(start, i));
+				} catch (NumberFormatException e) {
+					return null;
+				}
+				start = -1;
+			}
+		}
+		return field == 3 ? point : null;
+	}
+
+	/**
+	 * Insertion sort by location; the table is short.
+	 */
+	private static void sort(double[][] points, int count) {
+		for (int i = 1; i < count; i++) {
+			double[] p = points[i];
+			int j = i - 1;
+			while (j >= 0 && points[j][0] > p[0]) {
+				points[j + 1] = points[j];
+				j--;
+			}
+			points[j + 1] = p;
+		}
+	}
+
+	//// INTERPOLATION ---------------------------------------------------------
+
+	/**
+	 * Samples the monotone curves through the points into the lookup arrays.
+	 */
+	private static void build(double[][] points, int count) {
+		double[] rpmSlopes = slopes(points, count, 1);
+		double[] angleSlopes = slopes(points, count, 2);
+
+		_minLocation = points[0][0];
+		double span = points[count - 1][0] - _minLocation;
+		_scale = (LOOKUP_SIZE - 1) / span;
+
+		int segment = 0;
+		for (int i = 0; i < LOOKUP_SIZE; i++) {
+			double x = _minLocation + i / _scale;
+			while (segment < count - 2 && x > points[segment + 1][0]) {
+				segment++;
+			}
+			_rpm[i] = hermite(points, rpmSlopes, segment, 1, x);
+			_angle[i] = hermite(points, angleSlopes, segment, 2, x);
+		}
+	}
+
+	/**
+	 * Fritsch-Carlson tangents for one column, which keep the cubic monotone
+	 * wherever the points are.
+	 */
+	private static double[] slopes(double[][] points, int count, int column) {
+		double[] secants = new double[count - 1];
+		for (int i = 0; i < count - 1; i++) {
+			secants[i] = (points[i + 1][column] - points[i][column]) / (points[i + 1][0] - points[i][0]);
+		}
+
+		double[] m = new double[count];
+		m[0] = secants[0];
+		m[count - 1] = secants[count - 2];
+		for (int i = 1; i < count - 1; i++) {
+			m[i] = secants[i - 1] * secants[i] <= 0 ? 0 : (secants[i - 1] + secants[i]) / 2;
+		}
+
+		for (int i = 0; i < count - 1; i++) {
+			if (secants[i] == 0) {
+				m[i] = 0;
+				m[i + 1] = 0;
+				continue;
+			}
+			double a = m[i] / secants[i];
+			double b = m[i + 1] / secants[i];
+			double r = a * a + b * b;
+			if (r > 9) {
+				double t = 3 / Math.sqrt(r);
+				m[i] = t * a * secants[i];
+				m[i + 1] = t * b * secants[i];
+			}
+		}
+		return m;
+	}
+
+	/**
+	 * Evaluates the cubic Hermite segment starting at point i.
+	 */
+	private static double hermite(double[][] points, double[] m, int i, int column, double x) {
+		double h = points[i + 1][0] - points[i][0];
+		double t = Math.max(0, Math.min(1, (x - points[i][0]) / h));
+		double t2 = t * t;
+		double t3 = t2 * t;
+		return (2 * t3 - 3 * t2 + 1) * points[i][column]
+				+ (t3 - 2 * t2 + t) * h * m[i]
+				+ (-2 * t3 + 3 * t2) * points[i + 1][column]
+				+ (t3 - t2) * h * m[i + 1];
+	}
+
+	/**
+	 * Linear interpolation between lookup samples, clamped to the table.
+	 */
+	private static double lookup(double[] table, double location) {
+		if (!_loaded) {
+			load();
+		}
+		double index = (location - _minLocation) * _scale;
+		if (index <= 0) {
+			return table[0];
+		}
+		if (index >= LOOKUP_SIZE - 1) {
+			return table[LOOKUP_SIZE - 1];
+		}
+		int i = (int) index;
+		double fraction = index - i;
+		return table[i] + fraction * (table[i + 1] - table[i]);
+	}
+
+	//// GETTER METHODS --------------------------------------------------------
+
+	/**
+	 * @param location Vertical target location (TargetTracker.getPredictedLocationUnits()).
+	 * @return Shooter speed in RPM.
+	 */
+	public static synchronized double getRPM(double location) {
+		return lookup(_rpm, location);
+	}
+
+	/**
+	 * @param location Vertical target location (TargetTracker.getPredictedLocationUnits()).
+	 * @return Shooter angle of elevation in degrees.
+	 */
+	public static synchronized double getAngle(double location) {
+		return lookup(_angle, location);
+	}
+
+	/** @return Number of points in the loaded table. */
+	public static synchronized int getPointCount() {
+		return _pointCount;
+	}
+}
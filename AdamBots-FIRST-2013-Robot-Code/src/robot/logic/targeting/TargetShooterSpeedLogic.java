@@ -6,7 +6,7 @@ package robot.logic.targeting;
 
 import robot.RobotObject;
 import robot.behavior.RobotShoot;
-import robot.camera.RobotCamera;
+import robot.camera.TargetTracker;
 
 /**
  *
@@ -80,13 +80,22 @@ public class TargetShooterSpeedLogic extends RobotObject {
 		}
 	}
 	
+	//// GETTER METHODS --------------------------------------------------------
+	
+	/**
+	 * Tells whether the shooter speed is following the camera.
+	 */
+	public static boolean isTargeting() {
+		return _isTargeting && !_manualVoltage;
+	}
+	
 	//// CALCULATIONS ----------------------------------------------------------
 
 	/**
-	 * Calculates the RPM speed to set shooter to hit the target from RobotCamera.getDistance().
+	 * Looks up the RPM speed to set shooter to hit the target in the ShotTable.
 	 * @return Calculated RPM.
 	 */
 	public static double calculateSpeed() {
-		return 0.5 + 0.01 * RobotCamera.getDistanceInches();
+		return ShotTable.getRPM(TargetTracker.getPredictedLocationUnits());
 	}
 }
@@ -5,12 +5,17 @@
 package robot.logic.targeting;
 
 import robot.RobotObject;
+import robot.behavior.RobotDrive;
 import robot.camera.RobotCamera;
-import robot.logic.LogicTask;
-import robot.logic.tasks.TTurnDegrees;
+import robot.camera.TargetTracker;
+import robot.sensors.RobotSensors;
 
 /**
- *
+ * Turns the robot to face the target.  Each fresh camera result accepted by
+ * TargetTracker is converted, from the tracker's filtered direction, into an
+ * absolute heading using the gyro heading at the moment the image was
+ * captured, so camera latency does not cause the robot to overshoot; the robot
+ * is then turned to that heading with closed-loop gyro control.
  * @author Nathan
  */
 public class TargetSpinLogic extends RobotObject {
@@ -22,12 +27,20 @@ public class TargetSpinLogic extends RobotObject {
 	//// CONSTANTS -------------------------------------------------------------
 
 	public static double TARGET_TOLERANCE_DEGREES = 1;
+	/** Smallest turn output which still rotates the robot. */
+	public static double MIN_TURN_OUTPUT = 0.1;
+	/** Largest turn output used while aiming. */
+	public static double MAX_TURN_OUTPUT = 0.5;
 	
 	//// PRIVATE VARIABLES -----------------------------------------------------
 	
 	private static boolean _pointedRight = false;
 	private static boolean _isTargeting = false;
-	private static TTurnDegrees _turnTask = null;
+	/** Whether a target heading has been computed since targeting began. */
+	private static boolean _hasTargetHeading = false;
+	/** Absolute gyro heading of the target, in degrees. */
+	private static double _targetHeadingDegrees = 0;
+	private static final TargetTracker.Bearing _bearing = new TargetTracker.Bearing();
 
 	//// INITIALIZATION --------------------------------------------------------
 	
@@ -39,37 +52,55 @@ public class TargetSpinLogic extends RobotObject {
 	
 	//// UPDATE ----------------------------------------------------------------
 	
-	//TODO:  Comment TargetSpinLogic (NATHAN)
+	/**
+	 * While targeting, converts each fresh camera result into an absolute
+	 * heading (heading at capture + camera angle) and turns toward it.  When
+	 * targeting stops, the drive is stopped once.
+	 */
 	public static void update() {
 		if ( _isTargeting ) {
+			RobotCamera.requestFrames();
 			if ( RobotCamera.imageIsFresh() ) {
-				RobotCamera.imageUnfresh();
-				if ( Math.abs(RobotCamera.getDirectionDegrees()) > TARGET_TOLERANCE_DEGREES ) {
-					_pointedRight = false;
-					_turnTask = new TTurnDegrees(RobotCamera.getDirectionDegrees(), 0.1, TARGET_TOLERANCE_DEGREES);
-					_turnTask.initialize();
-				}
-				else
-				{
-					_pointedRight = true;
+				// Frames rejected by the tracker would only make the robot hunt
+				if ( TargetTracker.getLastBearing(_bearing) ) {
+					double headingAtCapture = RobotSensors.gyroChassis.getAngleAt(_bearing.captureMillis);
+					_targetHeadingDegrees = headingAtCapture + _bearing.angleDegrees;
+					_hasTargetHeading = true;
 				}
+				RobotCamera.imageUnfresh();
 			}
-			if ( _turnTask != null ) {
-				_turnTask.update();
-				if ( _turnTask.isDone() ) {
-					_turnTask.finish();
-					_turnTask = null;
+			if ( _hasTargetHeading ) {
+				double error = _targetHeadingDegrees - RobotSensors.gyroChassis.getAngle();
+				if ( Math.abs(error) <= TARGET_TOLERANCE_DEGREES ) {
 					_pointedRight = true;
+					RobotDrive.turn(0);
+				}
+				else {
+					_pointedRight = false;
+					RobotDrive.turn(calculateTurnOutput(error));
 				}
 			}
 		}
 		else {
-			if ( _turnTask != null ) {
-				_turnTask.finish();
-				_turnTask = null;
+			if ( _hasTargetHeading ) {
+				_hasTargetHeading = false;
+				RobotDrive.turn(0);
 			}
 		}
 	}
+
+	/**
+	 * PD control on heading error (RobotDrive.headingOutput(), with the drive's
+	 * heading gains), bounded so the robot always moves but never spins
+	 * faster than MAX_TURN_OUTPUT.
+	 * @param errorDegrees Target heading minus current heading.
+	 * @return Turn output (+ CW, - CCW).
+	 */
+	private static double calculateTurnOutput( double errorDegrees ) {
+		double output = RobotDrive.headingOutput(errorDegrees);
+		double magnitude = Math.max(MIN_TURN_OUTPUT, Math.min(MAX_TURN_OUTPUT, Math.abs(output)));
+		return errorDegrees > 0 ? magnitude : -magnitude;
+	}
 	
 	//// GETTER METHODS --------------------------------------------------------
 	
@@ -82,6 +113,14 @@ public class TargetSpinLogic extends RobotObject {
 		return _pointedRight;
 	}
 	
+	/**
+	 * Tells whether the robot is turning to face the target.
+	 */
+	public static boolean isTargeting()
+	{
+		return _isTargeting;
+	}
+	
 	//// SETTER METHODS --------------------------------------------------------
 
 	/**
@@ -89,6 +128,18 @@ public class TargetSpinLogic extends RobotObject {
 	 * @param x Whether to target.
 	 */
 	public static void setIsTargeting( boolean x ) {
+		if ( x && !_isTargeting ) {
+			_pointedRight = false;
+		}
 		_isTargeting = x;
 	}
+	
+	/**
+	 * Returns the absolute heading being turned toward.
+	 * @return Gyro heading in degrees; meaningless until a target has been seen.
+	 */
+	public static double getTargetHeadingDegrees()
+	{
+		return _targetHeadingDegrees;
+	}
 }
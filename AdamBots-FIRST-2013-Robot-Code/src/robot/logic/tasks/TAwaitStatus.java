@@ -6,6 +6,7 @@ package robot.logic.tasks;
 
 import robot.behavior.RobotClimb;
 import robot.behavior.RobotShoot;
+import robot.behavior.ShooterReadiness;
 import robot.logic.LogicTask;
 import robot.logic.targeting.TargetSpinLogic;
 import robot.sensors.RobotSensors;
@@ -23,6 +24,7 @@ public final class TAwaitStatus extends LogicTask {
     public static final int WINCH_IN_POSITION = 0;
     public static final int SHOOTER_IN_POSITION = 1;
     public static final int SHOOTER_UP_TO_SPEED = 2;
+    public static final int SHOOTER_READY = 3;
     public static final int TARGETING_COMPLETED = 98;
 	
 	// Timeout
@@ -88,6 +90,9 @@ public final class TAwaitStatus extends LogicTask {
 			case SHOOTER_UP_TO_SPEED:
 				_done = RobotShoot.isShooterUpToSpeed();
 				break;
+			case SHOOTER_READY:
+				_done = ShooterReadiness.isReady();
+				break;
 		}
 		
 		// Timeout
@@ -0,0 +1,164 @@
+package robot.logic.tasks;
+
+import robot.IO.DataIO;
+import robot.behavior.RobotShoot;
+import robot.behavior.ShooterReadiness;
+import robot.behavior.ShotDetector;
+import robot.logic.LogicTask;
+
+/**
+ * Fires several discs, waiting after each only as long as the shooter wheel
+ * needs to recover.  After each feed the task waits for ShotDetector to judge
+ * the feed (a dip, or no dip in time), then fires the next disc once
+ * ShooterReadiness says a shot would be good again, or once the maximum wait
+ * has passed.  Each feed ends
+ * as soon as ShotDetector confirms the shot, or after the maximum feed time.
+ * The feed cycle and recovery time of each shot are logged.  Remaining feeds
+ * are skipped once ShotDetector believes the magazine is empty or jammed.
+ * @author Adambots 245
+ */
+public class TBurstFire extends LogicTask {
+	//// CONSTANTS -------------------------------------------------------------
+
+	// States
+	private static final int FEEDING = 0;
+	private static final int RECOVERING = 1;
+
+	//// PRIVATE VARIABLES -----------------------------------------------------
+
+	private int _discs;
+	private int _feedMillis;
+	private int _maxWaitMillis;
+
+	private int _state;
+	private int _shot;
+	private long _stateStartMillis;
+	/** ShotDetector's shot count before the current feed. */
+	private int _shotsBeforeFeed;
+	private boolean _extended;
+	/** Recovery time of each shot; -1 where the wait timed out. */
+	private long[] _recoveryMillis;
+	/** Feed cycle time of each shot; -1 where the shot was not fed. */
+	private long[] _cycleMillis;
+
+	//// CONSTRUCTOR -----------------------------------------------------------
+
+	/**
+	 * Fires several discs, waiting after each only as long as the shooter
+	 * wheel needs to recover.
+	 * @param discs The number of discs to shoot.
+	 * @param feedMillis Longest time for which the feeder solenoid is extended.
+	 * @param maxWaitMillis Longest wait for recovery after each shot.
+	 */
+	public TBurstFire(int discs, int feedMillis, int maxWaitMillis){
+		_discs = discs;
+		_feedMillis = feedMillis;
+		_maxWaitMillis = maxWaitMillis;
+		_recoveryMillis = new long[discs];
+		_cycleMillis = new long[discs];
+	}
+
+	//// INITIALIZATION --------------------------------------------------------
+
+	protected void initialize() {
+		_shot = 0;
+		for (int i = 0; i < _discs; i++) {
+			_recoveryMillis[i] = -1;
+			_cycleMillis[i] = -1;
+		}
+		if (_discs <= 0) {
+			_done = true;
+			return;
+		}
+		feed();
+	}
+
+	//// UPDATE ----------------------------------------------------------------
+
+	protected void update() {
+		if (_done) {
+			return;
+		}
+		long elapsed = System.currentTimeMillis() - _stateStartMillis;
+
+		if (_state == FEEDING) {
+			// The feed is timed from the extension, after any feed boost
+			if (!_extended) {
+				if (!RobotShoot.isFeederExtended()) {
+					return;
+				}
+				_extended = true;
+				_stateStartMillis = System.currentTimeMillis();
+				elapsed = 0;
+			}
+			boolean confirmed = ShotDetector.isFeedConfirmed() && elapsed >= ShotDetector.getMinFeedMillis();
+			if (confirmed || elapsed >= _feedMillis) {
+				RobotShoot.setFeeder(false);
+				_cycleMillis[_shot] = elapsed;
+				DataIO.storeShooter("Burst shot " + (_shot + 1) + " feed cycle: " + elapsed + " ms (" + ShotDetector.getFeedConfirmationName() + ")");
+				if (_shot == _discs - 1) {
+					_done = true;
+					return;
+				}
+				_state = RECOVERING;
+				_stateStartMillis = System.currentTimeMillis();
+			}
+			return;
+		}
+
+		// RECOVERING; the dip is only awaited while ShotDetector still expects one
+		boolean dipSeen = ShotDetector.getShotCount() > _shotsBeforeFeed;
+		boolean recovered = ShooterReadiness.isReady() && (dipSeen || !ShotDetector.isWatching());
+		if (recovered || elapsed >= _maxWaitMillis) {
+			_recoveryMillis[_shot] = recovered ? elapsed : -1;
+			DataIO.storeShooter("Burst shot " + (_shot + 1) + " recovery: " + (recovered ? elapsed + " ms" : "timed out") + (dipSeen ? "" : " (no dip)"));
+			println("TBurstFire :: shot " + (_shot + 1) + " recovery " + _recoveryMillis[_shot]);
+			_shot++;
+			if (ShotDetector.getDiscsRemaining() == 0 || ShotDetector.isJammed()) {
+				println("TBurstFire :: skipping " + (_discs - _shot) + " feeds, " + (ShotDetector.isJammed() ? "jammed" : "magazine empty"));
+				_done = true;
+				return;
+			}
+			feed();
+		}
+	}
+
+	/**
+	 * Extends the feeder for the current shot.
+	 */
+	private void feed() {
+		_state = FEEDING;
+		_stateStartMillis = System.currentTimeMillis();
+		_shotsBeforeFeed = ShotDetector.getShotCount();
+		_extended = false;
+		RobotShoot.setFeeder(true);
+	}
+
+	//// GETTER METHODS --------------------------------------------------------
+
+	/**
+	 * Returns how long the feeder was extended for a shot.
+	 * @param shot The shot, starting at 0.
+	 * @return Milliseconds, or -1 if the shot was not fed.
+	 */
+	public long getCycleMillis(int shot) {
+		return _cycleMillis[shot];
+	}
+
+	/**
+	 * Returns the recovery time after a shot.
+	 * @param shot The shot, starting at 0.
+	 * @return Milliseconds from retracting the feeder until the next shot was
+	 * allowed, or -1 if the wait timed out (or the shot was the last).
+	 */
+	public long getRecoveryMillis(int shot) {
+		return _recoveryMillis[shot];
+	}
+
+	//// FINISH ----------------------------------------------------------------
+
+	protected int finish() {
+		RobotShoot.setFeeder(false);
+		return _done ? SUCCESS : FAILURE;
+	}
+}
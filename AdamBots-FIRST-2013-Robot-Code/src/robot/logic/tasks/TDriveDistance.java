@@ -4,67 +4,73 @@
  */
 package robot.logic.tasks;
 
-import edu.wpi.first.wpilibj.Timer;
 import robot.behavior.RobotDrive;
 import robot.logic.LogicTask;
-import robot.sensors.RobotSensors;
-import utils.MathUtils;
 
 /**
- *
+ * Drives straight for a distance as a guided RobotDrive move: it follows a
+ * motion profile on the drive encoders while the gyro holds the heading.
  * @author Curtis Fenner
  */
 public class TDriveDistance extends LogicTask {
+    //// CONSTANTS -------------------------------------------------------------
+    
+    /** Default drive speed (PWM value). */
+    public static final double DEFAULT_SPEED = 1.0;
+    /** Default acceleration rate (PWM change per loop). */
+    public static final double DEFAULT_ACCELERATION = 0.05;
+    
     //// PRIVATE VARIABLES -----------------------------------------------------
     
     double _targetDistanceInches;
-    double _initialEncoder;
+    double _speed;
+    double _accRate;
     boolean _iFailed = false;
-    Timer _timer = new Timer();
-    //TODO: VERIFY THAT THE ENCODERS BOTH GO FORWARD WHEN THE ROBOT GOES FORWARD
-    //OTHERWISE THIS IS USELESS.
 
     //// CONSTRUCTOR -----------------------------------------------------------
     
     /**
-     *
+     * Drives straight at the default speed.
      * @param distanceinches Determines the distance that it will go forward.
-     * Completely unintelligent by the way, it will not fail even if it gets
-     * stuck
      */
     public TDriveDistance(double distanceinches) {
+        this(distanceinches, DEFAULT_SPEED);
+    }
+    
+    /**
+     * Drives straight at a given speed.
+     * @param distanceinches Determines the distance that it will go forward.
+     * @param speed The cruising speed (PWM value); sign ignored.
+     */
+    public TDriveDistance(double distanceinches, double speed) {
         _targetDistanceInches = distanceinches;
-        //TODO: Insure that encoder s on wheels have accurate real world distance from get distance.
-        _timer.start();
+        _speed = Math.abs(speed);
+        _accRate = DEFAULT_ACCELERATION;
     }
 
     //// INITIALIZE ------------------------------------------------------------
     
     public void initialize() {
-        _initialEncoder = -(RobotSensors.encoderDriveLeft.getDistance() + RobotSensors.encoderDriveRight.getDistance()) / 2.0;
-        RobotSensors.encoderDriveLeft.start();
-        RobotSensors.encoderDriveRight.start();
+        RobotDrive.driveDistanceInches(_targetDistanceInches, _speed, _accRate, true);
     }
 
     //// UPDATE ----------------------------------------------------------------
     
     public void update() {
-        RobotDrive.driveStraight(MathUtils.sign(_targetDistanceInches) * 0.1);
-        double encodertarget = _initialEncoder + _targetDistanceInches - MathUtils.sign(_targetDistanceInches);
-        double currentencoder = -(RobotSensors.encoderDriveLeft.getDistance() + RobotSensors.encoderDriveRight.getDistance()) / 2.0;
-        if ((int) MathUtils.sign(encodertarget - currentencoder) != (int) MathUtils.sign(_targetDistanceInches)) {
-            RobotDrive.drive(0, 0); //Stop the robot
+        // RobotDrive ends the move in tolerance, or gives up if it cannot
+        if (!RobotDrive.isGuidedDriving()) {
+            _iFailed = !RobotDrive.didReachTarget();
             _done = true;
-        } else if (_timer.get() - 0.5 > Math.abs(_targetDistanceInches) / 5.0) {
-            _done = true;
-            _iFailed = true;
         }
     }
 
     //// FINISH ----------------------------------------------------------------
     
     public int finish() {
-        if (_iFailed) {
+        if (RobotDrive.isGuidedDriving()) {
+            RobotDrive.stop(); //Stop the robot
+        }
+        if (_iFailed || !_done) {
             return FAILURE;
         } else {
             return SUCCESS;
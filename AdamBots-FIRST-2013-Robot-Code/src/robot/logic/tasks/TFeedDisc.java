@@ -4,41 +4,48 @@
  */
 package robot.logic.tasks;
 
-import robot.actuators.RobotActuators;
+import robot.IO.DataIO;
+import robot.behavior.RobotShoot;
+import robot.behavior.ShotDetector;
 import robot.logic.LogicTask;
 
 /**
- * Feeds a disc into the shooter by enabling the solenoid, waiting for the 
- * default period of time, then disabling the solenoid.
+ * Feeds a disc into the shooter by enabling the solenoid, waiting until
+ * ShotDetector confirms the shot (or the maximum time passes), then disabling
+ * the solenoid.  The length of each feed cycle is logged.
  * @author Ben
  */
 public class TFeedDisc extends LogicTask {
 	//// CONSTANTS -------------------------------------------------------------
 	
-	/** Default delay constant for feeding the shooter. */
+	/** Default longest time the feeder is extended. */
 	public static final int SOLENOID_ON_MILLIS = 500;
 	
 	//// PRIVATE VARIABLES -----------------------------------------------------
 	
-	/* The total elapsed time, recorded at the start of this task. */
+	/* The time the feeder extended, or 0 while it waits for the feed boost. */
 	private long _initialTimeMillis;
-	/* Milliseconds to wait before disabling the shooter feeder solenoid. */
+	/* Most milliseconds to wait before disabling the shooter feeder solenoid. */
 	private int _delayMillis;
+	/* Length of the feed cycle, or -1 until it ends. */
+	private long _cycleMillis;
 	
 	//// CONSTRUCTOR -----------------------------------------------------------
 	
 	/**
-	 * Feeds a disc into the shooter by enabling the solenoid, waiting for the 
-	 * default period of time, then disabling the solenoid.
+	 * Feeds a disc into the shooter by enabling the solenoid, waiting for the
+	 * shot to be confirmed or the default maximum time, then disabling the
+	 * solenoid.
 	 */
 	public TFeedDisc(){
 		this(SOLENOID_ON_MILLIS);
 	}
 	
 	/**
-	 * Feeds a disc into the shooter by enabling the solenoid, waiting for a 
-	 * specified period of time, then disabling the solenoid.
-	 * @param delay The number of milliseconds to wait before retracting the solenoid.
+	 * Feeds a disc into the shooter by enabling the solenoid, waiting for the
+	 * shot to be confirmed or a specified maximum time, then disabling the
+	 * solenoid.
+	 * @param delay The most milliseconds to wait before retracting the solenoid.
 	 */
 	public TFeedDisc(int delay){
 		_delayMillis = delay;
@@ -47,23 +54,45 @@ public class TFeedDisc extends LogicTask {
 	//// INITIALIZATION --------------------------------------------------------
 	
 	protected void initialize() {
-		_initialTimeMillis = System.currentTimeMillis();
-		RobotActuators.shooterFeederSolenoid.set(true);
+		_initialTimeMillis = 0;
+		_cycleMillis = -1;
+		RobotShoot.setFeeder(true);
 	}
 
 	//// UPDATE ----------------------------------------------------------------
 	
 	protected void update() {
-		if(System.currentTimeMillis() - _initialTimeMillis >= _delayMillis){
+		if(_initialTimeMillis == 0){
+			if(!RobotShoot.isFeederExtended()){
+				return;
+			}
+			_initialTimeMillis = System.currentTimeMillis();
+		}
+		long elapsed = System.currentTimeMillis() - _initialTimeMillis;
+		boolean confirmed = ShotDetector.isFeedConfirmed() && elapsed >= ShotDetector.getMinFeedMillis();
+		if(confirmed || elapsed >= _delayMillis){
 			_done = true;
-			RobotActuators.shooterFeederSolenoid.set(false);
+			_cycleMillis = elapsed;
+			RobotShoot.setFeeder(false);
+			DataIO.storeShooter("Feed cycle: " + elapsed + " ms (" + ShotDetector.getFeedConfirmationName() + ")");
+			println("TFeedDisc :: feed cycle " + elapsed + " ms, " + ShotDetector.getFeedConfirmationName());
 		}
 	}
+	
+	//// GETTER METHODS --------------------------------------------------------
+	
+	/**
+	 * Returns how long the feeder was extended.
+	 * @return Milliseconds, or -1 if the feed has not finished.
+	 */
+	public long getCycleMillis() {
+		return _cycleMillis;
+	}
 
 	//// FINISH ----------------------------------------------------------------
 	
 	protected int finish() {
-		RobotActuators.shooterFeederSolenoid.set(false);
+		RobotShoot.setFeeder(false);
 		return _done ? SUCCESS : FAILURE;
 	}
 	
@@ -53,6 +53,7 @@ public class TeleopLogic extends LogicPhase {
     private double _elevatorDrive;
 	private boolean _shooterEnabled;
 	private boolean _shooterEnabledToggleReleased;
+	private boolean _feederExtended;
 
     /**
      * Creates an instance of TeleopLogic.
@@ -131,7 +132,11 @@ public class TeleopLogic extends LogicPhase {
 			_leftDrive = Math.max(-1, Math.min(1, _leftDrive));
 			_rightDrive = Math.max(-1, Math.min(1, _rightDrive));
 
-			RobotDrive.drive(_leftDrive, _rightDrive);
+			if (SmartDashboard.getBoolean("Heading Hold", RobotDrive.HEADING_HOLD_TELEOP)) {
+				RobotDrive.driveHeadingHold(_leftDrive, _rightDrive);
+			} else {
+				RobotDrive.drive(_leftDrive, _rightDrive);
+			}
 		}
 
 		// Handle shifting
@@ -295,6 +300,8 @@ public class TeleopLogic extends LogicPhase {
 		}
 		
 		SmartDashboard.putNumber("shooterRPM", RobotSensors.counterShooterSpeed.pidGet());
+		SmartDashboard.putNumber("shooterRPMAcceleration", RobotSensors.counterShooterSpeed.getAcceleration());
+		SmartDashboard.putNumber("shooterRPMGlitchRate", RobotSensors.counterShooterSpeed.getGlitchRate());
 		SmartDashboard.putNumber("shooterAngleEncoder", RobotSensors.counterShooterAngle.get());
 		
 		// Drive elevator
@@ -302,13 +309,17 @@ public class TeleopLogic extends LogicPhase {
 		//_elevatorDrive = _secondaryAxis[FancyJoystick.AXIS_TRIGGERS];
 		//RobotActuators.discElevator.set(_elevatorDrive);
 
-		// Disc fire control
-		if (_secondaryButtons[FancyJoystick.BUTTON_A]) {
+		// Disc fire control: a feed starts only when the shot would be good
+		// (Y overrides), and a feed already started finishes while A is held
+		if (_secondaryButtons[FancyJoystick.BUTTON_A]
+				&& (_feederExtended || ShooterReadiness.isReady() || _secondaryButtons[FancyJoystick.BUTTON_Y])) {
 			//RobotActuators.shooterFeederSolenoid.set(Relay.Value.kOn);
-			RobotActuators.shooterFeederSolenoid.set(true);
+			_feederExtended = true;
+			RobotShoot.setFeeder(true);
 		} else {
+			_feederExtended = false;
 			//RobotActuators.shooterFeederSolenoid.set(Relay.Value.kOff);
-			RobotActuators.shooterFeederSolenoid.set(false);
+			RobotShoot.setFeeder(false);
 		}
 		
 		// Disc intake control
@@ -0,0 +1,122 @@
+package robot.sensors;
+
+import edu.wpi.first.wpilibj.AnalogChannel;
+import utils.AlphaBetaFilter;
+
+/**
+ * An AnalogChannel which oversamples and averages in the analog module, then
+ * filters the averaged voltage once per loop.  update() should be called once
+ * per loop; the filtered voltage, its rate of change and the measurement
+ * noise can then be read without touching the hardware.
+ *
+ * The alpha-beta filter predicts forward from the estimated rate, so it lags
+ * a steadily moving input far less than a plain average of the same
+ * smoothness.  Its residuals (measurement less prediction) are the noise
+ * statistics.  Readings far from the prediction are rejected as spikes, but
+ * after MAX_CONSECUTIVE_REJECTS in a row, or once no reading has been
+ * accepted for MAX_REJECT_MILLIS, the filter restarts from the reading, since
+ * the input has really moved and the filter would otherwise never follow it.
+ * @author Adambots 245
+ */
+public class FancyAnalogChannel extends AnalogChannel {
+	//// CONSTANTS -------------------------------------------------------------
+
+	/** Weight of each new residual in the noise averages. */
+	public static final double NOISE_WEIGHT = 0.02;
+	/** Residuals beyond this many standard deviations are rejected as spikes. */
+	public static final double GATE_SIGMAS = 6;
+	/** Consecutive rejected readings after which the filter restarts. */
+	public static final int MAX_CONSECUTIVE_REJECTS = 3;
+	/** Time without an accepted reading after which the filter restarts. */
+	public static final long MAX_REJECT_MILLIS = 500;
+
+	//// PRIVATE VARIABLES -----------------------------------------------------
+
+	private final AlphaBetaFilter _filter;
+	private double _lastVoltage = 0;
+	/** Running mean of squared residuals. */
+	private double _noiseVariance = 0;
+	/** Largest recent residual, decaying at NOISE_WEIGHT per sample. */
+	private double _peakNoise = 0;
+	private int _rejected = 0;
+	private int _consecutiveRejects = 0;
+	private long _lastAcceptedMillis = 0;
+
+	//// CONSTRUCTOR -----------------------------------------------------------
+
+	/**
+	 * @param slot Analog module slot.
+	 * @param channel Analog channel.
+	 * @param oversampleBits The module sums 2^bits samples per value, adding resolution.
+	 * @param averageBits The module averages 2^bits values, reducing noise.
+	 * @param alpha Filter value gain (0-1); smaller is smoother but slower.
+	 * @param beta Filter rate gain (0-1).
+	 * @param minGate Voltage changes smaller than this are never rejected.
+	 */
+	public FancyAnalogChannel(int slot, int channel, int oversampleBits, int averageBits, double alpha, double beta, double minGate) {
+		super(slot, channel);
+		setOversampleBits(oversampleBits);
+		setAverageBits(averageBits);
+		_filter = new AlphaBetaFilter(alpha, beta, GATE_SIGMAS, minGate);
+	}
+
+	//// UPDATE ----------------------------------------------------------------
+
+	/**
+	 * Reads the averaged voltage and updates the filter and noise statistics.
+	 */
+	public synchronized void update() {
+		long now = System.currentTimeMillis();
+		_lastVoltage = getAverageVoltage();
+		if (_filter.isInitialized()) {
+			double residual = _lastVoltage - _filter.predict(now);
+			if (!_filter.update(_lastVoltage, now)) {
+				_rejected++;
+				_consecutiveRejects++;
+				if (_consecutiveRejects < MAX_CONSECUTIVE_REJECTS && now - _lastAcceptedMillis <= MAX_REJECT_MILLIS) {
+					return;
+				}
+				_filter.reset(_lastVoltage, now);
+			} else {
+				_noiseVariance += NOISE_WEIGHT * (residual * residual - _noiseVariance);
+				_peakNoise = Math.max(Math.abs(residual), _peakNoise * (1 - NOISE_WEIGHT));
+			}
+		} else {
+			_filter.reset(_lastVoltage, now);
+		}
+		_consecutiveRejects = 0;
+		_lastAcceptedMillis = now;
+	}
+
+	//// GETTER METHODS --------------------------------------------------------
+
+	/** @return The filtered voltage, or the raw average before update() is called. */
+	public synchronized double getFilteredVoltage() {
+		return _filter.isInitialized() ? _filter.getValue() : getAverageVoltage();
+	}
+
+	/** @return The estimated rate of change of the voltage, in volts per second. */
+	public synchronized double getVoltageRate() {
+		return _filter.getRate();
+	}
+
+	/** @return The averaged voltage read by the last update(). */
+	public synchronized double getLastVoltage() {
+		return _lastVoltage;
+	}
+
+	/** @return RMS of recent residuals, in volts. */
+	public synchronized double getNoiseVoltage() {
+		return Math.sqrt(_noiseVariance);
+	}
+
+	/** @return Largest recent residual, in volts. */
+	public synchronized double getPeakNoiseVoltage() {
+		return _peakNoise;
+	}
+
+	/** @return Number of readings rejected as spikes. */
+	public synchronized int getRejectedCount() {
+		return _rejected;
+	}
+}
@@ -8,10 +8,23 @@ import edu.wpi.first.wpilibj.Counter;
 import edu.wpi.first.wpilibj.PIDSource;
 
 /**
+ * A Counter which reports filtered RPM to a PIDController.  Each new pulse
+ * period seen by pidGet() is converted to RPM and, if plausible, stored in a
+ * small ring; pidGet() returns the median (or mean) of the ring, so a single
+ * glitched period no longer steps the PID input.  The ring also gives an
+ * acceleration estimate, and implausible periods are counted by kind.
  *
  * @author Adambots 245
  */
 public class FancyCounter extends Counter implements PIDSource {
+	
+	//// CONSTANTS -------------------------------------------------------------
+	
+	/** Filter modes. */
+	public static final int MEDIAN = 0;
+	public static final int MEAN = 1;
+	/** Largest number of periods the filter can combine. */
+	public static final int MAX_WINDOW = 9;
 
 	// New constructor with radius option
 	// getDiameter();
@@ -23,6 +36,25 @@ public class FancyCounter extends Counter implements PIDSource {
 	double distance;
     int errorVal;
     private int _ticksPerPeriod;
+	
+	// Filter
+	private int _filterMode = MEDIAN;
+	private int _window = 5;
+	private double _minRpm = 300;
+	private double _maxRpm = 6000;
+	/** Plausible RPM samples and the times they were taken. */
+	private final double[] _samples = new double[MAX_WINDOW];
+	private final long[] _sampleTimes = new long[MAX_WINDOW];
+	private final double[] _sorted = new double[MAX_WINDOW];
+	private int _sampleIndex = 0;
+	private int _sampleCount = 0;
+	/** Count at the last sample, used to tell whether a new period exists. */
+	private int _lastCount = -1;
+	
+	// Glitch Statistics
+	private int _lowGlitches = 0;
+	private int _highGlitches = 0;
+	private int _samplesTaken = 0;
 
     public FancyCounter(int channel) {
         super(channel);
@@ -65,13 +97,16 @@ public class FancyCounter extends Counter implements PIDSource {
 
     }
 
-    public int getError() {
+    public synchronized int getError() {
 
         return errorVal;
     }
 
-    public void resetError() {
+    public synchronized void resetError() {
         errorVal = 0;
+		_lowGlitches = 0;
+		_highGlitches = 0;
+		_samplesTaken = 0;
     }
 
 	public double getDiameter() {
@@ -86,23 +121,137 @@ public class FancyCounter extends Counter implements PIDSource {
 //		return get() * diameter * Math.PI / _ticksPerPeriod;
 //	}
 	
-    public double pidGet() {
+	/**
+	 * Returns the filtered speed.  A new sample is taken only when a pulse
+	 * has arrived since the last call, so repeated calls do not weight one
+	 * period more than others.
+	 * @return RPM; the last estimate is held while no plausible pulses arrive.
+	 */
+    public synchronized double pidGet() {
+		int count = get();
+		if (count == _lastCount) {
+			return lastRpm;
+		}
+		_lastCount = count;
+		
         double time = getPeriod();
         double rpm = (60 / time) / _ticksPerPeriod;
+		_samplesTaken++;
 
         // if (rom > 5000)  // was that before, but i thought i might need something different that wasn't 5000
-        if (rpm > 6000) {
+        if (rpm > _maxRpm) {
             errorVal++;
-            rpm = lastRpm;
-        } else if (rpm < 300) {
+			_highGlitches++;
+			return lastRpm;
+        } else if (rpm < _minRpm) {
 			errorVal++;
-            rpm = lastRpm;
-		} else {
-			lastRpm = rpm;
+			_lowGlitches++;
+			return lastRpm;
 		}
-
-        return rpm;
+		
+		_samples[_sampleIndex] = rpm;
+		_sampleTimes[_sampleIndex] = System.currentTimeMillis();
+		_sampleIndex = (_sampleIndex + 1) % _window;
+		if (_sampleCount < _window) {
+			_sampleCount++;
+		}
+		lastRpm = filter();
+        return lastRpm;
     }
+	
+	/**
+	 * Combines the samples in the ring.
+	 */
+	private double filter() {
+		if (_filterMode == MEAN) {
+			double sum = 0;
+			for (int i = 0; i < _sampleCount; i++) {
+				sum += _samples[i];
+			}
+			return sum / _sampleCount;
+		}
+		
+		// Insertion sort; the window is small
+		for (int i = 0; i < _sampleCount; i++) {
+			double v = _samples[i];
+			int j = i - 1;
+			while (j >= 0 && _sorted[j] > v) {
+				_sorted[j + 1] = _sorted[j];
+				j--;
+			}
+			_sorted[j + 1] = v;
+		}
+		if (_sampleCount % 2 == 1) {
+			return _sorted[_sampleCount / 2];
+		}
+		return 0.5 * (_sorted[_sampleCount / 2 - 1] + _sorted[_sampleCount / 2]);
+	}
+	
+	/**
+	 * Estimates the acceleration by a least squares line through the samples
+	 * in the ring.
+	 * @return RPM per second.
+	 */
+	public synchronized double getAcceleration() {
+		if (_sampleCount < 2) {
+			return 0;
+		}
+		// Times relative to the first sample keep the sums small
+		long t0 = _sampleTimes[0];
+		double st = 0, sr = 0;
+		for (int i = 0; i < _sampleCount; i++) {
+			st += (_sampleTimes[i] - t0) / 1000.0;
+			sr += _samples[i];
+		}
+		double meanT = st / _sampleCount;
+		double meanR = sr / _sampleCount;
+		double stt = 0, str = 0;
+		for (int i = 0; i < _sampleCount; i++) {
+			double dt = (_sampleTimes[i] - t0) / 1000.0 - meanT;
+			stt += dt * dt;
+			str += dt * (_samples[i] - meanR);
+		}
+		return stt == 0 ? 0 : str / stt;
+	}
+	
+	/**
+	 * Chooses how the ring is combined.
+	 * @param mode MEDIAN or MEAN.
+	 * @param window Number of periods combined (1 to MAX_WINDOW).
+	 */
+	public synchronized void setFilter(int mode, int window) {
+		_filterMode = mode;
+		_window = Math.max(1, Math.min(MAX_WINDOW, window));
+		_sampleIndex = 0;
+		_sampleCount = 0;
+	}
+	
+	/**
+	 * Sets the range of plausible speeds; samples outside it are glitches.
+	 * @param minRpm Slowest plausible RPM.
+	 * @param maxRpm Fastest plausible RPM.
+	 */
+	public synchronized void setBounds(double minRpm, double maxRpm) {
+		_minRpm = minRpm;
+		_maxRpm = maxRpm;
+	}
+	
+	/** @return Samples rejected as too slow since the last resetError(). */
+	public synchronized int getLowGlitches() {
+		return _lowGlitches;
+	}
+	
+	/** @return Samples rejected as too fast since the last resetError(). */
+	public synchronized int getHighGlitches() {
+		return _highGlitches;
+	}
+	
+	/**
+	 * Returns the fraction of samples rejected since the last resetError().
+	 */
+	public synchronized double getGlitchRate() {
+		return _samplesTaken == 0 ? 0 : (double) (_lowGlitches + _highGlitches) / _samplesTaken;
+	}
     
     public void setTicksPerPeriod(int t) {
 	_ticksPerPeriod = t;
@@ -0,0 +1,105 @@
+package robot.sensors;
+
+import edu.wpi.first.wpilibj.Gyro;
+
+/**
+ * A Gyro that remembers its recent headings.  update() should be called once
+ * per loop; getAngleAt() then answers where the robot was pointed at some
+ * earlier time, which lets latency-prone sensors (the camera) be related to
+ * the heading at the moment they were sampled.
+ * @author Adambots 245
+ */
+public class FancyGyro extends Gyro {
+	//// CONSTANTS -------------------------------------------------------------
+
+	/** Number of heading samples retained (about 1.3s at 20ms per loop). */
+	public static final int HISTORY_SIZE = 64;
+
+	//// PRIVATE VARIABLES -----------------------------------------------------
+
+	private final long[] _times = new long[HISTORY_SIZE];
+	private final double[] _angles = new double[HISTORY_SIZE];
+	/** Index at which the next sample will be written. */
+	private int _index = 0;
+	/** Number of valid samples. */
+	private int _count = 0;
+
+	//// CONSTRUCTOR -----------------------------------------------------------
+
+	public FancyGyro(int slot, int channel) {
+		super(slot, channel);
+	}
+
+	//// UPDATE ----------------------------------------------------------------
+
+	/**
+	 * Samples the current heading into the history buffer.
+	 */
+	public synchronized void update() {
+		_times[_index] = System.currentTimeMillis();
+		_angles[_index] = getAngle();
+		_index = (_index + 1) % HISTORY_SIZE;
+		if (_count < HISTORY_SIZE) {
+			_count++;
+		}
+	}
+
+	/**
+	 * Resets the gyro and discards the heading history, since earlier samples
+	 * no longer share a reference with new ones.
+	 */
+	public synchronized void reset() {
+		super.reset();
+		_count = 0;
+		_index = 0;
+	}
+
+	//// HISTORY ---------------------------------------------------------------
+
+	/**
+	 * Returns the heading at the given time, interpolating between samples.
+	 * Times newer than the latest sample return the current angle; times older
+	 * than the history return the oldest retained sample.
+	 * @param timeMillis A System.currentTimeMillis() timestamp.
+	 * @return Heading in degrees.
+	 */
+	public synchronized double getAngleAt(long timeMillis) {
+		if (_count == 0) {
+			return getAngle();
+		}
+
+		int newer = (_index + HISTORY_SIZE - 1) % HISTORY_SIZE;
+		if (timeMillis >= _times[newer]) {
+			return getAngle();
+		}
+
+		// Walk backwards until the bracketing pair is found
+		for (int i = 1; i < _count; i++) {
+			int older = (_index + HISTORY_SIZE - 1 - i) % HISTORY_SIZE;
+			if (_times[older] <= timeMillis) {
+				long span = _times[newer] - _times[older];
+				if (span <= 0) {
+					return _angles[older];
+				}
+				double f = (double) (timeMillis - _times[older]) / span;
+				return _angles[older] + f * (_angles[newer] - _angles[older]);
+			}
+			newer = older;
+		}
+		return _angles[newer];
+	}
+
+	/**
+	 * Estimates the angular rate from the two most recent samples.
+	 * @return Degrees per second (positive clockwise, like getAngle()).
+	 */
+	public synchronized double getRateDegreesPerSecond() {
+		if (_count < 2) {
+			return 0;
+		}
+		int a = (_index + HISTORY_SIZE - 1) % HISTORY_SIZE;
+		int b = (_index + HISTORY_SIZE - 2) % HISTORY_SIZE;
+		long dt = _times[a] - _times[b];
+		return dt <= 0 ? 0 : (_angles[a] - _angles[b]) * 1000.0 / dt;
+	}
+}
@@ -46,6 +46,14 @@ public class RobotSensors extends RobotObject {
 	// Gyro
 	public static final double GYRO_VPDPS = 1.0;						// Volts per Degree Per Second
 	
+	// String Potentiometer (2^(4+0) = 16 samples, about 2.6ms at the default
+	// 6250 samples/s per channel; the alpha-beta filter does the smoothing)
+	public static final int STRING_POT_OVERSAMPLE_BITS = 4;
+	public static final int STRING_POT_AVERAGE_BITS = 0;
+	public static final double STRING_POT_ALPHA = 0.4;
+	public static final double STRING_POT_BETA = 0.05;
+	public static final double STRING_POT_MIN_GATE = 0.2;				// Volts
+	
 	//// PORT CONSTANTS --------------------------------------------------------
 	
 	// Card Constants (by card, not by slot)
@@ -136,11 +144,11 @@ public class RobotSensors extends RobotObject {
     public static DigitalInput limitHookRightBase;
 	
 	// Chassis
-    public static Gyro gyroChassis;
+    public static FancyGyro gyroChassis;
     public static Accelerometer accelerometerChassis;
 	
 	// Shooter
-	public static AnalogChannel stringPot;
+	public static FancyAnalogChannel stringPot;
     public static FancyCounter counterShooterSpeed;
 	private static FancyCounter _counterShooterAngleInternal;
     public static FancyCounterExtended counterShooterAngle;
@@ -182,8 +190,10 @@ public class RobotSensors extends RobotObject {
 	private static void initCompetition(){
 		//// ANALOG CARD -------------------------------------------------------
 
-        gyroChassis = new Gyro(ANA1, CompetitionBot.Analog.GYRO); //?
-		stringPot = new AnalogChannel(ANA1, CompetitionBot.Analog.STRING_POT);
+        gyroChassis = new FancyGyro(ANA1, CompetitionBot.Analog.GYRO); //?
+		stringPot = new FancyAnalogChannel(ANA1, CompetitionBot.Analog.STRING_POT,
+				STRING_POT_OVERSAMPLE_BITS, STRING_POT_AVERAGE_BITS,
+				STRING_POT_ALPHA, STRING_POT_BETA, STRING_POT_MIN_GATE);
 
         //// DIGITAL CARD 1 ----------------------------------------------------
 
@@ -264,4 +274,15 @@ public class RobotSensors extends RobotObject {
 		// TODO:  Gyro Config?
 		//gyroChassis.setSensitivity(GYRO_VPDPS);
 	}
+	
+	//// UPDATE ----------------------------------------------------------------
+	
+	/**
+	 * Samples sensors that keep a history.  Should be called once per loop,
+	 * before any logic that reads them.
+	 */
+	public static void update(){
+		gyroChassis.update();
+		stringPot.update();
+	}
 }
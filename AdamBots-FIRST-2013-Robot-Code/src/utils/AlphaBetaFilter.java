@@ -0,0 +1,131 @@
+package utils;
+
+/**
+ * Alpha-beta (g-h) filter for a single value sampled at irregular times.
+ * Estimates the value and its rate of change, predicts the value at any later
+ * time, and can reject measurements whose innovation is implausibly large.
+ * @author Adambots 245
+ */
+public class AlphaBetaFilter {
+	//// PRIVATE VARIABLES -----------------------------------------------------
+
+	private double _alpha;
+	private double _beta;
+	/** Number of residual standard deviations permitted before rejection. */
+	private double _gateSigmas;
+	/** Smallest innovation which is ever rejected, in measurement units. */
+	private double _minGate;
+
+	private boolean _initialized = false;
+	private double _value = 0;
+	private double _rate = 0;
+	private long _timeMillis = 0;
+	/** Running average of squared innovations, used for gating. */
+	private double _residualVariance = 0;
+
+	//// CONSTRUCTOR -----------------------------------------------------------
+
+	/**
+	 * @param alpha Value correction gain (0-1).
+	 * @param beta Rate correction gain (0-1, usually much smaller than alpha).
+	 * @param gateSigmas Innovations beyond this many residual standard
+	 * deviations are rejected.
+	 * @param minGate Innovations smaller than this are always accepted.
+	 */
+	public AlphaBetaFilter(double alpha, double beta, double gateSigmas, double minGate) {
+		_alpha = alpha;
+		_beta = beta;
+		_gateSigmas = gateSigmas;
+		_minGate = minGate;
+	}
+
+	//// FILTER ----------------------------------------------------------------
+
+	/**
+	 * Discards the current estimate and restarts from a measurement.
+	 * @param measurement The measured value.
+	 * @param timeMillis The time at which it was measured.
+	 */
+	public void reset(double measurement, long timeMillis) {
+		_value = measurement;
+		_rate = 0;
+		_timeMillis = timeMillis;
+		_residualVariance = 0;
+		_initialized = true;
+	}
+
+	/**
+	 * Tells whether a measurement would be rejected as an outlier, without
+	 * changing the filter.
+	 * @param measurement The measured value.
+	 * @param timeMillis The time at which it was measured.
+	 * @return TRUE if update() would reject the measurement.
+	 */
+	public boolean isOutlier(double measurement, long timeMillis) {
+		if (!_initialized) {
+			return false;
+		}
+		double innovation = Math.abs(measurement - predict(timeMillis));
+		double gate = Math.max(_minGate, _gateSigmas * Math.sqrt(_residualVariance));
+		return innovation > gate;
+	}
+
+	/**
+	 * Corrects the estimate with a measurement, unless it is an outlier.
+	 * @param measurement The measured value.
+	 * @param timeMillis The time at which it was measured.
+	 * @return TRUE if the measurement was accepted.
+	 */
+	public boolean update(double measurement, long timeMillis) {
+		if (!_initialized) {
+			reset(measurement, timeMillis);
+			return true;
+		}
+		if (isOutlier(measurement, timeMillis)) {
+			return false;
+		}
+
+		double dt = (timeMillis - _timeMillis) / 1000.0;
+		double predicted = _value + _rate * dt;
+		double innovation = measurement - predicted;
+
+		_value = predicted + _alpha * innovation;
+		if (dt > 0) {
+			_rate += _beta * innovation / dt;
+		}
+		_timeMillis = timeMillis;
+		_residualVariance += 0.1 * (innovation * innovation - _residualVariance);
+		return true;
+	}
+
+	//// GETTER METHODS --------------------------------------------------------
+
+	/**
+	 * Predicts the value at a given time from the current estimate.
+	 * @param timeMillis Time of the prediction.
+	 * @return Predicted value.
+	 */
+	public double predict(long timeMillis) {
+		return _value + _rate * (timeMillis - _timeMillis) / 1000.0;
+	}
+
+	/** @return The estimate as of the last accepted measurement. */
+	public double getValue() {
+		return _value;
+	}
+
+	/** @return The estimated rate of change, in units per second. */
+	public double getRate() {
+		return _rate;
+	}
+
+	/** @return Time of the last accepted measurement. */
+	public long getTimeMillis() {
+		return _timeMillis;
+	}
+
+	/** @return TRUE once the filter has received a measurement. */
+	public boolean isInitialized() {
+		return _initialized;
+	}
+}
@@ -0,0 +1,210 @@
+package utils;
+
+/**
+ * Trapezoidal motion profile: accelerates at a constant rate up to a cruising
+ * velocity, cruises, then decelerates to stop exactly at the goal.  Moves too
+ * short to reach the cruising velocity become triangular.  The profile may
+ * start moving, so a new goal can be planned from the middle of a move without
+ * a jump in velocity.
+ *
+ * With setSCurve(true) the acceleration and deceleration ramp smoothly (as
+ * sin^2) instead of switching on and off, which limits jerk.  Each ramp takes
+ * twice as long as the trapezoid's at the same peak acceleration, but covers
+ * the same distance as a trapezoid of half the acceleration, so the phases
+ * are planned that way.
+ * @author Adambots 245
+ */
+public class TrapezoidProfile {
+	//// PRIVATE VARIABLES -----------------------------------------------------
+
+	private double _maxVelocity;
+	private double _maxAcceleration;
+	private boolean _sCurve = false;
+	/** Average acceleration of each ramp: the limit, or half of it for an S-curve. */
+	private double _accel;
+
+	private double _start = 0;
+	private double _goal = 0;
+	/** +1 or -1; the profile is planned in the direction of the goal. */
+	private double _direction = 1;
+	private double _startVelocity = 0;
+	private double _peakVelocity = 0;
+	/** End of acceleration, end of cruising and end of the move, in seconds. */
+	private double _accelTime = 0;
+	private double _cruiseTime = 0;
+	private double _totalTime = 0;
+	/** Distance covered by the end of acceleration. */
+	private double _accelDistance = 0;
+
+	//// CONSTRUCTOR -----------------------------------------------------------
+
+	/**
+	 * @param maxVelocity Cruising velocity, in units per second.
+	 * @param maxAcceleration Acceleration and deceleration, in units per second squared.
+	 */
+	public TrapezoidProfile(double maxVelocity, double maxAcceleration) {
+		setLimits(maxVelocity, maxAcceleration);
+	}
+
+	//// PLANNING --------------------------------------------------------------
+
+	/**
+	 * Selects a smooth (S-curve) or constant (trapezoidal) acceleration for
+	 * the next call to plan().  Either way the acceleration never exceeds the
+	 * limit.
+	 */
+	public void setSCurve(boolean sCurve) {
+		_sCurve = sCurve;
+	}
+
+	/**
+	 * Sets the limits used by the next call to plan().
+	 */
+	public void setLimits(double maxVelocity, double maxAcceleration) {
+		_maxVelocity = Math.abs(maxVelocity);
+		_maxAcceleration = Math.abs(maxAcceleration);
+	}
+
+	/**
+	 * Plans a move from a position and velocity to rest at a goal.  If the
+	 * profile is moving toward a goal too close to stop in time, the starting
+	 * velocity is reduced to the fastest from which it can.  Moving away from
+	 * the goal needs no such limit: the profile reverses and comes back.
+	 * @param start Starting position.
+	 * @param startVelocity Starting velocity.
+	 * @param goal Position at which to stop.
+	 */
+	public void plan(double start, double startVelocity, double goal) {
+		_start = start;
+		_goal = goal;
+		_direction = goal >= start ? 1 : -1;
+		double distance = Math.abs(goal - start);
+		_accel = _sCurve ? _maxAcceleration / 2 : _maxAcceleration;
+		double a = _accel;
+
+		// Work in the direction of the goal; moving away is a negative velocity
+		double v0 = Math.min(_direction * startVelocity, _maxVelocity);
+		if (v0 > 0 && v0 * v0 / (2 * a) > distance) {
+			v0 = Math.sqrt(2 * a * distance);
+		}
+		_startVelocity = v0;
+
+		// Triangular if the cruising velocity cannot be reached
+		double peak = Math.sqrt(a * distance + v0 * v0 / 2);
+		_peakVelocity = Math.min(_maxVelocity, Math.max(v0, peak));
+
+		_accelTime = (_peakVelocity - v0) / a;
+		_accelDistance = (_peakVelocity * _peakVelocity - v0 * v0) / (2 * a);
+		double decelDistance = _peakVelocity * _peakVelocity / (2 * a);
+		double cruise = Math.max(0, distance - _accelDistance - decelDistance);
+		_cruiseTime = _accelTime + (_peakVelocity > 0 ? cruise / _peakVelocity : 0);
+		_totalTime = _cruiseTime + _peakVelocity / a;
+	}
+
+	//// SAMPLING --------------------------------------------------------------
+
+	/**
+	 * @param t Seconds since the move was planned.
+	 * @return The planned position.
+	 */
+	public double position(double t) {
+		double d;
+		if (t <= 0) {
+			d = 0;
+		} else if (t < _accelTime) {
+			d = _startVelocity * t + rampDistance(t, _accelTime, _peakVelocity - _startVelocity);
+		} else if (t < _cruiseTime) {
+			d = _accelDistance + _peakVelocity * (t - _accelTime);
+		} else if (t < _totalTime) {
+			double left = _totalTime - t;
+			return _goal - _direction * rampDistance(left, _totalTime - _cruiseTime, _peakVelocity);
+		} else {
+			return _goal;
+		}
+		return _start + _direction * d;
+	}
+
+	/**
+	 * @param t Seconds since the move was planned.
+	 * @return The planned velocity.
+	 */
+	public double velocity(double t) {
+		double v;
+		if (t <= 0) {
+			v = _startVelocity;
+		} else if (t < _accelTime) {
+			v = _startVelocity + rampVelocity(t, _accelTime, _peakVelocity - _startVelocity);
+		} else if (t < _cruiseTime) {
+			v = _peakVelocity;
+		} else if (t < _totalTime) {
+			v = rampVelocity(_totalTime - t, _totalTime - _cruiseTime, _peakVelocity);
+		} else {
+			v = 0;
+		}
+		return _direction * v;
+	}
+
+	/**
+	 * @param t Seconds since the move was planned.
+	 * @return The planned acceleration.
+	 */
+	public double acceleration(double t) {
+		if (t < 0 || t >= _totalTime) {
+			return 0;
+		} else if (t < _accelTime) {
+			return _direction * rampAcceleration(t, _accelTime, _peakVelocity - _startVelocity);
+		} else if (t < _cruiseTime) {
+			return 0;
+		}
+		return -_direction * rampAcceleration(_totalTime - t, _totalTime - _cruiseTime, _peakVelocity);
+	}
+
+	//// RAMPS -----------------------------------------------------------------
+
+	// Each ramp changes the velocity by dv over a time T, starting from rest
+	// relative to its own start; the deceleration ramp is sampled backwards
+	// from the end of the move.
+
+	private double rampDistance(double t, double T, double dv) {
+		if (!_sCurve) {
+			return _accel * t * t / 2;
+		}
+		double w = 2 * Math.PI / T;
+		return dv / T * (t * t / 2 + (Math.cos(w * t) - 1) / (w * w));
+	}
+
+	private double rampVelocity(double t, double T, double dv) {
+		if (!_sCurve) {
+			return _accel * t;
+		}
+		double w = 2 * Math.PI / T;
+		return dv / T * (t - Math.sin(w * t) / w);
+	}
+
+	private double rampAcceleration(double t, double T, double dv) {
+		if (!_sCurve) {
+			return _accel;
+		}
+		return dv / T * (1 - Math.cos(2 * Math.PI * t / T));
+	}
+
+	//// GETTER METHODS --------------------------------------------------------
+
+	/** @return Length of the planned move in seconds. */
+	public double getTotalTime() {
+		return _totalTime;
+	}
+
+	/** @return Where the planned move ends. */
+	public double getGoal() {
+		return _goal;
+	}
+
+	/**
+	 * @param t Seconds since the move was planned.
+	 * @return TRUE if the planned move has ended.
+	 */
+	public boolean isFinished(double t) {
+		return t >= _totalTime;
+	}
+}